@@ -0,0 +1,151 @@
+package com.barberbot.api.client;
+
+import com.barberbot.api.config.BarberBotProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Circuito por instância da Evolution.
+ * <p>
+ * Depois de {@code breakerFailureThreshold} falhas seguidas (o que conta é o {@code countsAsFailure} de quem chama;
+ * no {@link EvolutionClient}: 5xx, timeout e falha de conexão, inclusive os que não são repetidos) o circuito abre:
+ * os envios falham na hora com {@link OpenException}, sem chamar a Evolution, e o {@link EvolutionClient}
+ * os segura até o circuito fechar. Passado {@code breakerOpenSeconds}, um único envio de teste é liberado;
+ * se der certo o circuito fecha, senão abre de novo.
+ */
+@Slf4j
+@Component
+public class EvolutionCircuitBreaker {
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    /** Envio recusado porque o circuito está aberto. */
+    public static class OpenException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final Duration retryAfter;
+
+        OpenException(String instance, Duration retryAfter) {
+            super("Circuito aberto para a instância " + instance);
+            this.retryAfter = retryAfter;
+        }
+
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    private static final class Circuit {
+        private State state = State.CLOSED;
+        private int failures;
+        private long openUntil;
+        private boolean trialInFlight;
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    public EvolutionCircuitBreaker(BarberBotProperties properties, MeterRegistry meterRegistry) {
+        BarberBotProperties.Outbound config = properties.getOutbound();
+        this.failureThreshold = config.getBreakerFailureThreshold();
+        this.openMillis = config.getBreakerOpenSeconds() * 1000L;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Executa {@code call} se o circuito da instância permitir; registra sucesso ou falha.
+     * {@code countsAsFailure} decide quais erros contam (um 400 da Evolution não derruba o circuito).
+     */
+    public <T> Mono<T> protect(String instance, Mono<T> call, Predicate<Throwable> countsAsFailure) {
+        return Mono.defer(() -> {
+            Circuit circuit = circuit(instance);
+            boolean trial;
+            synchronized (circuit) {
+                long now = System.currentTimeMillis();
+                if (circuit.state == State.OPEN && now >= circuit.openUntil) {
+                    circuit.state = State.HALF_OPEN;
+                    circuit.trialInFlight = false;
+                }
+                if (circuit.state == State.OPEN || (circuit.state == State.HALF_OPEN && circuit.trialInFlight)) {
+                    long wait = Math.max(circuit.openUntil - now, 1000);
+                    return Mono.error(new OpenException(instance, Duration.ofMillis(wait)));
+                }
+                trial = circuit.state == State.HALF_OPEN;
+                if (trial) circuit.trialInFlight = true;
+            }
+            return call
+                    .doOnSuccess(value -> onSuccess(instance, circuit))
+                    .doOnError(e -> {
+                        if (countsAsFailure.test(e)) onFailure(instance, circuit);
+                        else if (trial) release(circuit);
+                    })
+                    .doOnCancel(() -> {
+                        if (trial) release(circuit);
+                    });
+        });
+    }
+
+    public State state(String instance) {
+        Circuit circuit = circuits.get(instance);
+        if (circuit == null) return State.CLOSED;
+        synchronized (circuit) {
+            return circuit.state;
+        }
+    }
+
+    private Circuit circuit(String instance) {
+        return circuits.computeIfAbsent(instance, name -> {
+            Circuit circuit = new Circuit();
+            // 0 = fechado, 1 = meio aberto (testando), 2 = aberto
+            Gauge.builder("barberbot.outbound.breaker.state", circuit, c -> {
+                        synchronized (c) {
+                            return c.state.ordinal();
+                        }
+                    })
+                    .description("Estado do circuito da instância da Evolution (0 fechado, 1 testando, 2 aberto)")
+                    .tag("instance", name)
+                    .register(meterRegistry);
+            return circuit;
+        });
+    }
+
+    private void onSuccess(String instance, Circuit circuit) {
+        synchronized (circuit) {
+            if (circuit.state != State.CLOSED) log.info("[EVOLUTION] Circuito da instância {} fechado. Envios normalizados.", instance);
+            circuit.state = State.CLOSED;
+            circuit.failures = 0;
+            circuit.trialInFlight = false;
+        }
+    }
+
+    private void onFailure(String instance, Circuit circuit) {
+        synchronized (circuit) {
+            circuit.failures++;
+            if (circuit.state == State.HALF_OPEN || circuit.failures >= failureThreshold) {
+                if (circuit.state != State.OPEN) {
+                    log.warn("[EVOLUTION] Circuito da instância {} aberto após {} falhas. Segurando envios por {} s.",
+                            instance, circuit.failures, openMillis / 1000);
+                }
+                circuit.state = State.OPEN;
+                circuit.openUntil = System.currentTimeMillis() + openMillis;
+                circuit.trialInFlight = false;
+            }
+        }
+    }
+
+    private void release(Circuit circuit) {
+        synchronized (circuit) {
+            circuit.trialInFlight = false;
+        }
+    }
+}
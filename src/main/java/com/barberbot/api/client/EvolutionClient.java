@@ -2,16 +2,29 @@ package com.barberbot.api.client;
 
 import com.barberbot.api.config.BarberBotProperties;
 import com.barberbot.api.dto.MessageDTO;
+import com.barberbot.api.service.PhoneNumbers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @Component
@@ -21,33 +34,38 @@ public class EvolutionClient {
 
     private final WebClient webClient;
     private final BarberBotProperties properties;
+    private final SendRateLimiter rateLimiter;
+    private final EvolutionCircuitBreaker circuitBreaker;
+    private final MeterRegistry meterRegistry;
 
     /**
      * Envia mensagem de texto simples
      */
     public Mono<String> sendTextMessage(String phone, String text) {
+        return sendTextMessage(phone, text, SendPriority.INTERACTIVE);
+    }
+
+    /**
+     * Envia texto respeitando o limite de envios da classe de prioridade informada
+     */
+    public Mono<String> sendTextMessage(String phone, String text, SendPriority priority) {
         Map<String, Object> body = new HashMap<>();
         body.put("number", formatPhone(phone));
         body.put("text", text);
         body.put("delay", 1200);
         body.put("linkPreview", true);
 
-        return webClient.post()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/message/sendText/{instance}")
-                        .build(properties.getEvolution().getInstanceName()))
-                .contentType(MediaType.APPLICATION_JSON)
-                .header("apikey", properties.getEvolution().getApiKey())
-                .bodyValue(body)
-                .retrieve()
-                .bodyToMono(String.class)
-                .doOnError(e -> log.error("Erro ao enviar texto para {}: {}", phone, e.getMessage()));
+        return post("/message/sendText/{instance}", body, phone, priority, "texto");
     }
 
     /**
      * Envia imagem com legenda
      */
     public Mono<String> sendImageMessage(String phone, String imageUrl, String caption) {
+        return sendImageMessage(phone, imageUrl, caption, SendPriority.INTERACTIVE);
+    }
+
+    public Mono<String> sendImageMessage(String phone, String imageUrl, String caption, SendPriority priority) {
         Map<String, Object> body = new HashMap<>();
         body.put("number", formatPhone(phone));
         body.put("media", imageUrl);
@@ -55,16 +73,7 @@ public class EvolutionClient {
         body.put("caption", caption);
         body.put("delay", 1200);
 
-        return webClient.post()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/message/sendMedia/{instance}")
-                        .build(properties.getEvolution().getInstanceName()))
-                .contentType(MediaType.APPLICATION_JSON)
-                .header("apikey", properties.getEvolution().getApiKey())
-                .bodyValue(body)
-                .retrieve()
-                .bodyToMono(String.class)
-                .doOnError(e -> log.error("Erro ao enviar imagem para {}: {}", phone, e.getMessage()));
+        return post("/message/sendMedia/{instance}", body, phone, priority, "imagem");
     }
 
     /**
@@ -91,16 +100,24 @@ public class EvolutionClient {
         body.put("sections", sections);
         body.put("delay", 1000);
 
+        return post("/message/sendList/{instance}", body, phone, SendPriority.INTERACTIVE, "lista");
+    }
+
+    /**
+     * Corpo bruto (JSON com o campo "base64") da mídia de uma mensagem recebida, em pedaços,
+     * para quem chamou gravar em disco sem montar a resposta inteira na memória.
+     */
+    public Flux<DataBuffer> fetchMediaBase64(String messageId) {
+        Map<String, Object> body = Map.of("message", Map.of("key", Map.of("id", messageId)));
         return webClient.post()
                 .uri(uriBuilder -> uriBuilder
-                        .path("/message/sendList/{instance}")
+                        .path("/chat/getBase64FromMediaMessage/{instance}")
                         .build(properties.getEvolution().getInstanceName()))
                 .contentType(MediaType.APPLICATION_JSON)
                 .header("apikey", properties.getEvolution().getApiKey())
                 .bodyValue(body)
                 .retrieve()
-                .bodyToMono(String.class)
-                .doOnError(e -> log.error("Erro ao enviar lista para {}: {}", phone, e.getMessage()));
+                .bodyToFlux(DataBuffer.class);
     }
 
     // --- MÉTODOS ESTÁTICOS AUXILIARES (Usados pelo MenuOptions) ---
@@ -120,16 +137,90 @@ public class EvolutionClient {
         return section;
     }
 
+    // --- ENVIO COM LIMITE, CIRCUITO E NOVAS TENTATIVAS ---
+
+    /**
+     * Cada tentativa passa pelo circuito da instância, pede permissão ao limitador e tem timeout próprio.
+     * Só 5xx e falhas antes de conectar são repetidos, com backoff exponencial e jitter; timeouts não (o envio pode
+     * ter chegado), mas contam para o circuito junto com os 5xx e qualquer falha de conexão. Com o circuito aberto o
+     * envio espera ele fechar (sem gastar tentativa). Esgotadas as tentativas, o Mono termina com erro.
+     */
+    private Mono<String> post(String path, Map<String, Object> body, String phone, SendPriority priority, String what) {
+        String instance = properties.getEvolution().getInstanceName();
+        BarberBotProperties.Outbound config = properties.getOutbound();
+        Mono<String> attempt = circuitBreaker.protect(instance, rateLimiter.acquire(phone, priority).then(
+                webClient.post()
+                        .uri(uriBuilder -> uriBuilder.path(path).build(instance))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("apikey", properties.getEvolution().getApiKey())
+                        .bodyValue(body)
+                        .retrieve()
+                        .bodyToMono(String.class)
+                        .timeout(Duration.ofSeconds(config.getSendTimeoutSeconds()))),
+                EvolutionClient::isOutage);
+
+        return Mono.defer(() -> {
+            int[] retries = new int[1];
+            return attempt.retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                Throwable e = signal.failure();
+                if (e instanceof EvolutionCircuitBreaker.OpenException open) {
+                    retryCounter("circuit_open").increment();
+                    return Mono.delay(open.getRetryAfter());
+                }
+                if (!isRetryable(e) || retries[0] >= config.getMaxRetries()) return Mono.error(e);
+                retries[0]++;
+                retryCounter(reason(e)).increment();
+                Duration backoff = backoff(retries[0], config);
+                log.warn("Falha ao enviar {} para {} ({}). Tentativa {}/{} em {} ms",
+                        what, phone, e.getMessage(), retries[0], config.getMaxRetries(), backoff.toMillis());
+                return Mono.delay(backoff);
+            })));
+        }).doOnError(e -> log.error("Erro ao enviar {} para {}: {}", what, phone, e.getMessage()));
+    }
+
+    // Exponencial com teto e "equal jitter": metade fixa, metade aleatória (evita rajadas sincronizadas)
+    private static Duration backoff(int retry, BarberBotProperties.Outbound config) {
+        long base = Math.min(config.getRetryMaxMs(), config.getRetryInitialMs() << Math.min(retry - 1, 20));
+        return Duration.ofMillis(base / 2 + ThreadLocalRandom.current().nextLong(base / 2 + 1));
+    }
+
+    // 5xx e conexão recusada podem passar sozinhos; 4xx não adianta repetir. Timeout de leitura ou conexão caída
+    // depois do envio não se repete: a Evolution pode já ter mandado a mensagem (sendText não é idempotente)
+    private static boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException response) return response.getStatusCode().is5xxServerError();
+        return e instanceof WebClientRequestException && neverConnected(e);
+    }
+
+    // Instância fora ou travada: abre o circuito mesmo quando o erro não pode ser repetido
+    private static boolean isOutage(Throwable e) {
+        if (e instanceof WebClientResponseException response) return response.getStatusCode().is5xxServerError();
+        return e instanceof WebClientRequestException || e instanceof TimeoutException;
+    }
+
+    private static boolean neverConnected(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException) return true;
+            if (cause.getCause() == cause) break;
+        }
+        return false;
+    }
+
+    private static String reason(Throwable e) {
+        if (e instanceof WebClientResponseException) return "5xx";
+        return "connection";
+    }
+
+    private Counter retryCounter(String reason) {
+        return Counter.builder("barberbot.outbound.retries")
+                .description("Novas tentativas de envio para a Evolution")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
     // --- UTILS ---
 
     private String formatPhone(String phone) {
-        if (phone == null) return "";
-        // Remove caracteres não numéricos
-        String nums = phone.replaceAll("[^0-9]", "");
-        // Se não tiver DDI (comprimento 10 ou 11), adiciona 55
-        if (nums.length() == 10 || nums.length() == 11) {
-            return "55" + nums;
-        }
-        return nums;
+        // Só dígitos; sem DDI (10 ou 11 dígitos) ganha o 55
+        return PhoneNumbers.e164(phone);
     }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package com.barberbot.api.client;
+
+/**
+ * Classe de prioridade de um envio. Quando falta vaga no limite global, quem está antes na lista sai primeiro.
+ */
+public enum SendPriority {
+    /** Resposta a um cliente que está conversando agora */
+    INTERACTIVE,
+    /** Lembretes e avisos agendados */
+    REMINDER,
+    /** Disparos em massa */
+    BROADCAST;
+
+    /** Envios em massa também respeitam o espaçamento de barberbot.schedule (batch-size / delay-between-messages) */
+    public boolean isBulk() {
+        return this != INTERACTIVE;
+    }
+}
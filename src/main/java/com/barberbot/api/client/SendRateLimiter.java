@@ -0,0 +1,217 @@
+package com.barberbot.api.client;
+
+import com.barberbot.api.config.BarberBotProperties;
+import com.barberbot.api.service.PhoneNumbers;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limite de envios para a Evolution (proteção contra bloqueio do número no WhatsApp).
+ * <p>
+ * Três baldes de tokens: um global (todos os envios), um por destinatário e um de envios em massa
+ * (lembretes e disparos), configurado por barberbot.schedule.batch-size / delay-between-messages.
+ * {@link #acquire} devolve um Mono que completa quando houver permissão - a espera é um timer do Reactor,
+ * nenhuma thread fica parada. Quem espera é atendido por prioridade ({@link SendPriority}) e ordem de chegada.
+ */
+@Slf4j
+@Component
+public class SendRateLimiter {
+
+    private static final int MAX_IDLE_RECIPIENTS = 10_000;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Bucket global;
+    private final Bucket bulk;
+    private final double recipientBurst;
+    private final double recipientPerNano;
+    private final Map<String, Bucket> recipients = new HashMap<>();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+    private final Scheduler scheduler = Schedulers.parallel();
+    private Disposable wakeUp;
+    private long wakeUpAt = Long.MAX_VALUE;
+    private long sequence;
+
+    private final Timer waitTimer;
+
+    public SendRateLimiter(BarberBotProperties properties, MeterRegistry meterRegistry) {
+        BarberBotProperties.Schedule config = properties.getSchedule();
+        long now = System.nanoTime();
+        this.global = new Bucket(config.getGlobalBurst(), perNano(config.getGlobalPerMinute(), 60_000), now);
+        this.bulk = new Bucket(Math.max(1, config.getBatchSize()), perNano(1, Math.max(1, config.getDelayBetweenMessages())), now);
+        this.recipientBurst = config.getRecipientBurst();
+        this.recipientPerNano = perNano(config.getRecipientPerMinute(), 60_000);
+
+        Gauge.builder("barberbot.outbound.ratelimit.waiting", waiters, PriorityQueue::size)
+                .description("Envios aguardando permissão do limitador")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("barberbot.outbound.ratelimit.wait")
+                .description("Espera por permissão de envio")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Completa quando o envio para {@code phone} pode sair.
+     */
+    public Mono<Void> acquire(String phone, SendPriority priority) {
+        String recipient = PhoneNumbers.digits(phone);
+        return Mono.create(sink -> {
+            List<MonoSink<Void>> released = new ArrayList<>();
+            boolean granted;
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                // Atende primeiro quem já espera e pode sair; o que sobrar de token fica para este pedido
+                serveWaiters(now, released);
+                granted = tryTake(recipient, priority, now);
+                if (!granted) {
+                    Waiter waiter = new Waiter(priority, sequence++, recipient, sink, now);
+                    waiters.add(waiter);
+                    // Desistiu (timeout do envio): sai da fila sem consumir token
+                    sink.onCancel(() -> cancel(waiter));
+                    scheduleDrain(now);
+                }
+            } finally {
+                lock.unlock();
+            }
+            // Completa fora do lock: quem assina já dispara a chamada HTTP
+            released.forEach(MonoSink::success);
+            if (granted) sink.success();
+        });
+    }
+
+    private void drain() {
+        List<MonoSink<Void>> released = new ArrayList<>();
+        lock.lock();
+        try {
+            wakeUp = null;
+            wakeUpAt = Long.MAX_VALUE;
+            long now = System.nanoTime();
+            serveWaiters(now, released);
+            if (!waiters.isEmpty()) scheduleDrain(now);
+            pruneRecipients(now);
+        } finally {
+            lock.unlock();
+        }
+        released.forEach(MonoSink::success);
+    }
+
+    private void cancel(Waiter waiter) {
+        lock.lock();
+        try {
+            waiters.remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Chamado com o lock: libera, por prioridade e chegada, quem tem token em todos os baldes
+    private void serveWaiters(long now, List<MonoSink<Void>> released) {
+        if (waiters.isEmpty()) return;
+        Waiter[] ordered = waiters.toArray(new Waiter[0]);
+        Arrays.sort(ordered);
+        for (Waiter waiter : ordered) {
+            if (global.available(now) < 1) break;
+            if (tryTake(waiter.recipient, waiter.priority, now)) {
+                waiters.remove(waiter);
+                waitTimer.record(now - waiter.since, TimeUnit.NANOSECONDS);
+                released.add(waiter.sink);
+            }
+        }
+    }
+
+    // Chamado com o lock: consome os tokens só se todos os baldes envolvidos tiverem
+    private boolean tryTake(String recipient, SendPriority priority, long now) {
+        Bucket perRecipient = recipients.computeIfAbsent(recipient, r -> new Bucket(recipientBurst, recipientPerNano, now));
+        if (global.available(now) < 1 || perRecipient.available(now) < 1) return false;
+        if (priority.isBulk() && bulk.available(now) < 1) return false;
+        global.take();
+        perRecipient.take();
+        if (priority.isBulk()) bulk.take();
+        return true;
+    }
+
+    // Chamado com o lock: acorda quando o primeiro balde necessário tiver um token
+    private void scheduleDrain(long now) {
+        long delay = Long.MAX_VALUE;
+        for (Waiter waiter : waiters) {
+            long wait = global.nanosUntilToken(now);
+            Bucket perRecipient = recipients.get(waiter.recipient);
+            if (perRecipient != null) wait = Math.max(wait, perRecipient.nanosUntilToken(now));
+            if (waiter.priority.isBulk()) wait = Math.max(wait, bulk.nanosUntilToken(now));
+            delay = Math.min(delay, wait);
+        }
+        delay = Math.max(delay, TimeUnit.MILLISECONDS.toNanos(1));
+        long at = now + delay;
+        if (wakeUp != null && wakeUpAt <= at) return;
+        if (wakeUp != null) wakeUp.dispose();
+        wakeUpAt = at;
+        wakeUp = scheduler.schedule(this::drain, delay, TimeUnit.NANOSECONDS);
+    }
+
+    // Chamado com o lock: baldes cheios de quem não está esperando não guardam informação
+    private void pruneRecipients(long now) {
+        if (recipients.size() < MAX_IDLE_RECIPIENTS) return;
+        recipients.values().removeIf(b -> b.available(now) >= b.capacity);
+    }
+
+    private static double perNano(double amount, double millis) {
+        return amount / (millis * 1_000_000d);
+    }
+
+    private record Waiter(SendPriority priority, long sequence, String recipient, MonoSink<Void> sink, long since)
+            implements Comparable<Waiter> {
+        @Override
+        public int compareTo(Waiter other) {
+            int byPriority = Integer.compare(priority.ordinal(), other.priority.ordinal());
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class Bucket {
+        private final double capacity;
+        private final double perNano;
+        private double tokens;
+        private long refilledAt;
+
+        Bucket(double capacity, double perNano, long now) {
+            this.capacity = capacity;
+            this.perNano = perNano;
+            this.tokens = capacity;
+            this.refilledAt = now;
+        }
+
+        double available(long now) {
+            if (now > refilledAt) {
+                tokens = Math.min(capacity, tokens + (now - refilledAt) * perNano);
+                refilledAt = now;
+            }
+            return tokens;
+        }
+
+        void take() {
+            tokens -= 1;
+        }
+
+        long nanosUntilToken(long now) {
+            double missing = 1 - available(now);
+            return missing <= 0 ? 0 : (long) Math.ceil(missing / perNano);
+        }
+    }
+}
@@ -14,6 +14,18 @@ public class BarberBotProperties {
     private Schedule schedule = new Schedule();
     /** Textos e links do menu (opcional; se vazio usamos valores padrão no código) */
     private Menu menu = new Menu();
+    private Webhook webhook = new Webhook();
+    private Execution execution = new Execution();
+    private Journal journal = new Journal();
+    private Dedup dedup = new Dedup();
+    private Conversation conversation = new Conversation();
+    private Interactions interactions = new Interactions();
+    private ResponseCache responseCache = new ResponseCache();
+    private Coalesce coalesce = new Coalesce();
+    private Outbound outbound = new Outbound();
+    private Media media = new Media();
+    private Campaign campaign = new Campaign();
+    private Vision vision = new Vision();
 
     @Data
     public static class Admin {
@@ -25,6 +37,11 @@ public class BarberBotProperties {
         private String baseUrl;
         private String instanceName;
         private String apiKey;
+        /** Conexões HTTP mantidas no pool do WebClient (reaproveita TCP/TLS entre chamadas) */
+        private int maxConnections = 50;
+        private int connectTimeoutMs = 5000;
+        /** Tempo máximo até a Evolution começar a responder */
+        private int responseTimeoutSeconds = 60;
     }
 
     @Data
@@ -34,13 +51,182 @@ public class BarberBotProperties {
         private String visionModel;
         private String whisperModel;
         private Double temperature;
+        /** Envia a resposta do chat em partes, conforme o modelo gera */
+        private boolean streaming = false;
+        /** Tamanho mínimo de uma parte antes de cortar em fim de frase */
+        private int streamingMinChars = 120;
+        /** Tokens de histórico (resumo + falas) enviados em cada chamada, além do prompt e da mensagem atual */
+        private int historyTokenBudget = 1200;
     }
 
     @Data
     public static class Schedule {
         private Integer delayMinutes;
-        private Integer batchSize;
-        private Long delayBetweenMessages;
+        /** Rajada de envios em massa (lembretes e disparos) antes do espaçamento valer */
+        private Integer batchSize = 5;
+        /** Espaçamento (ms) entre envios em massa depois da rajada */
+        private Long delayBetweenMessages = 3000L;
+        /** Limite global de envios à Evolution por minuto (todas as prioridades) */
+        private int globalPerMinute = 60;
+        /** Rajada permitida no limite global */
+        private int globalBurst = 20;
+        /** Limite de envios por minuto para o mesmo número */
+        private int recipientPerMinute = 20;
+        /** Rajada permitida para o mesmo número (saudação + menu + resposta) */
+        private int recipientBurst = 5;
+        /** Máximo de tarefas agendadas reservadas (e em envio) por instância ao mesmo tempo */
+        private int claimBatchSize = 50;
+        /** Tempo de exclusividade de uma tarefa reservada; vencido, outra instância pode pegá-la */
+        private int leaseSeconds = 600;
+    }
+
+    @Data
+    public static class Webhook {
+        /** Pasta onde as mídias em base64 dos webhooks são decodificadas (fora do heap) */
+        private String spoolDir = System.getProperty("java.io.tmpdir") + "/barberbot-media";
+        /** Quantos bytes iniciais do corpo o pré-filtro inspeciona (event, data.key) */
+        private int preFilterBytes = 2048;
+    }
+
+    @Data
+    public static class Media {
+        /** Cache de mídias baixadas: arquivos por SHA-256 + índice por message id */
+        private String cacheDir = System.getProperty("java.io.tmpdir") + "/barberbot-media-cache";
+        /** Tamanho máximo de uma mídia decodificada; acima disso o download é abortado */
+        private long maxBytes = 16 * 1024 * 1024;
+        /** Tempo máximo de um download inteiro */
+        private int fetchTimeoutSeconds = 60;
+        /** Mídias mais antigas que isso saem do cache */
+        private int cacheTtlHours = 24;
+        /** Teto do cache em disco; acima dele saem as mais antigas */
+        private long cacheMaxMb = 512;
+    }
+
+    @Data
+    public static class Campaign {
+        /** Clientes lidos por página (keyset por id) */
+        private int pageSize = 50;
+        /** Envios da campanha em andamento ao mesmo tempo (o ritmo real é do limitador de envios) */
+        private int concurrency = 4;
+        /** Cursor e contadores são salvos a cada checkpointEvery envios concluídos ou checkpointSeconds, o que vier antes */
+        private int checkpointEvery = 10;
+        private int checkpointSeconds = 5;
+        /** Intervalo entre os relatórios de progresso para o admin */
+        private int progressIntervalSeconds = 300;
+    }
+
+    @Data
+    public static class Vision {
+        /** Menor lado enviado ao modelo de visão (o GPT-4o reduz para 768 de qualquer jeito) */
+        private int maxShortSide = 768;
+        /** Maior lado enviado ao modelo de visão */
+        private int maxLongSide = 2048;
+        /** Prints mais altos que largura × isso são cortados em partes (lidas em paralelo); 2,6 deixa inteiro o print comum de celular */
+        private double tileAspect = 2.6;
+        /** Sobreposição (px, já reduzido) entre partes, para nenhuma linha da agenda ficar só cortada */
+        private int tileOverlapPx = 120;
+        /** Chamadas de visão simultâneas para as partes de um print */
+        private int tileConcurrency = 3;
+        /** Qualidade do JPEG reenviado (0-1) */
+        private float jpegQuality = 0.85f;
+        /** Prints já lidos guardados (hash perceptual → JSON da agenda) */
+        private int cacheEntries = 32;
+        /** Validade de uma leitura em cache ("Hoje" muda de sentido no dia seguinte) */
+        private int cacheTtlHours = 12;
+    }
+
+    @Data
+    public static class Execution {
+        /** "platform" (pool de threads do SO) ou "virtual" (virtual threads do Java 21) */
+        private String mode = "platform";
+        /** Threads processando conversas em paralelo */
+        private int poolSize = 8;
+        /** Máximo de webhooks pendentes; acima disso o endpoint responde 503 */
+        private int queueCapacity = 500;
+
+        public boolean isVirtual() {
+            return "virtual".equalsIgnoreCase(mode);
+        }
+    }
+
+    @Data
+    public static class Journal {
+        /** Pasta dos segmentos do journal de entrada e do offset confirmado */
+        private String dir = "./data/journal";
+        private int segmentSizeMb = 64;
+        /** Janela do group commit: appends nesse intervalo compartilham o mesmo fsync */
+        private long flushIntervalMs = 2;
+        /** Backlog não processado acima disso faz o webhook responder 503 */
+        private int maxBacklogMb = 256;
+    }
+
+    @Data
+    public static class Dedup {
+        /** Cada balde de message ids cobre esse intervalo; expirar = descartar o balde inteiro */
+        private int bucketMinutes = 10;
+        /** Baldes no anel (janela total = bucketMinutes x buckets) */
+        private int buckets = 3;
+        /** Dias que um message id atendido fica em processed_messages */
+        private int retentionDays = 7;
+    }
+
+    @Data
+    public static class Conversation {
+        /** Falas guardadas por cliente (e enviadas como contexto ao LLM) */
+        private int historySize = 20;
+        private int maxConversations = 10000;
+        /** Conversa sem movimento por esse tempo sai da memória */
+        private int idleMinutes = 60;
+        /** Teto global de caracteres de histórico em memória */
+        private long maxChars = 20_000_000;
+    }
+
+    @Data
+    public static class Interactions {
+        /** Grava o lote ao juntar esse número de falas... */
+        private int batchSize = 200;
+        /** ...ou após esse tempo desde a primeira fala pendente */
+        private long flushIntervalMs = 50;
+        private int queueCapacity = 20000;
+    }
+
+    @Data
+    public static class ResponseCache {
+        private boolean enabled = true;
+        private int maxEntries = 2000;
+        private int ttlMinutes = 720;
+        /** Cosseno mínimo (trigramas) para aceitar uma pergunta parecida */
+        private double similarity = 0.85;
+        /** Só usa o cache se o cliente tiver mandado até esse número de mensagens antes */
+        private int maxHistory = 2;
+    }
+
+    @Data
+    public static class Coalesce {
+        private boolean enabled = true;
+        /** Silêncio do cliente que encerra a rajada */
+        private long quietMs = 2500;
+        /** Espera máxima desde a primeira mensagem da rajada */
+        private long maxWaitMs = 8000;
+    }
+
+    @Data
+    public static class Outbound {
+        /** Envios simultâneos para a Evolution (destinatários diferentes) */
+        private int maxConcurrency = 16;
+        /** Tempo máximo de cada tentativa de envio (chamada HTTP) */
+        private int sendTimeoutSeconds = 30;
+        /** Tempo máximo de uma entrega, somando tentativas, esperas e o circuito aberto */
+        private int deliveryTimeoutSeconds = 300;
+        /** Novas tentativas após erro 5xx ou conexão recusada (timeout não repete: o envio pode ter saído) */
+        private int maxRetries = 4;
+        /** Espera antes da primeira nova tentativa; dobra a cada uma (com variação aleatória) */
+        private long retryInitialMs = 500;
+        private long retryMaxMs = 15000;
+        /** Falhas seguidas que abrem o circuito da instância */
+        private int breakerFailureThreshold = 5;
+        /** Quanto tempo o circuito fica aberto antes de deixar um envio de teste passar */
+        private int breakerOpenSeconds = 30;
     }
 
     @Data
@@ -0,0 +1,24 @@
+package com.barberbot.api.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+/**
+ * Liga barberbot.execution.mode=virtual ao spring.threads.virtual.enabled do Spring Boot.
+ * Assim uma única chave coloca em virtual threads o Tomcat, os @Scheduled e os @Async.
+ */
+public class ExecutionModeEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        String mode = environment.getProperty("barberbot.execution.mode", "platform");
+        if ("virtual".equalsIgnoreCase(mode) && !environment.containsProperty("spring.threads.virtual.enabled")) {
+            environment.getPropertySources().addLast(
+                    new MapPropertySource("barberbotExecutionMode", Map.of("spring.threads.virtual.enabled", "true")));
+        }
+    }
+}
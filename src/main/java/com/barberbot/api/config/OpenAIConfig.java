@@ -1,6 +1,7 @@
 package com.barberbot.api.config;
 
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -22,4 +23,14 @@ public class OpenAIConfig {
                 .timeout(Duration.ofSeconds(60)) // Aumentar timeout para imagens
                 .build();
     }
+
+    @Bean
+    public OpenAiStreamingChatModel openAiStreamingChatModel() {
+        return OpenAiStreamingChatModel.builder()
+                .apiKey(properties.getOpenai().getApiKey())
+                .modelName(properties.getOpenai().getModel())
+                .temperature(properties.getOpenai().getTemperature())
+                .timeout(Duration.ofSeconds(60))
+                .build();
+    }
 }
\ No newline at end of file
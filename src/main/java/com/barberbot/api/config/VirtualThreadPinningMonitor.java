@@ -0,0 +1,84 @@
+package com.barberbot.api.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Relatório de pinning das virtual threads (só no modo virtual).
+ * Escuta o evento JFR jdk.VirtualThreadPinned: toda vez que uma virtual thread bloqueia
+ * dentro de um bloco synchronized (ou código nativo) ela prende a thread do SO.
+ * Conta por ponto do código e loga um resumo a cada hora.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "barberbot.execution", name = "mode", havingValue = "virtual")
+public class VirtualThreadPinningMonitor {
+
+    private static final Duration THRESHOLD = Duration.ofMillis(20);
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, LongAdder> pinnedBySite = new ConcurrentHashMap<>();
+    private RecordingStream stream;
+
+    @PostConstruct
+    public void start() {
+        stream = new RecordingStream();
+        stream.enable("jdk.VirtualThreadPinned").withThreshold(THRESHOLD).withStackTrace();
+        stream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+        stream.startAsync();
+        log.info("[VTHREADS] Monitor de pinning ativo (limite {} ms)", THRESHOLD.toMillis());
+    }
+
+    private void onPinned(RecordedEvent event) {
+        String site = describe(event);
+        pinnedBySite.computeIfAbsent(site, k -> new LongAdder()).increment();
+        meterRegistry.counter("barberbot.vthreads.pinned").increment();
+        log.warn("[VTHREADS] Virtual thread presa por {} ms em {}", event.getDuration().toMillis(), site);
+    }
+
+    // Primeiro frame da aplicação na pilha (ou o topo, se não houver)
+    private static String describe(RecordedEvent event) {
+        if (event.getStackTrace() == null) return "desconhecido";
+        List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        for (RecordedFrame frame : frames) {
+            String type = frame.getMethod().getType().getName();
+            if (type.startsWith("com.barberbot")) {
+                return type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+            }
+        }
+        if (frames.isEmpty()) return "desconhecido";
+        RecordedFrame top = frames.get(0);
+        return top.getMethod().getType().getName() + "." + top.getMethod().getName();
+    }
+
+    @Scheduled(cron = "0 0 * * * *")
+    public void report() {
+        if (pinnedBySite.isEmpty()) return;
+        StringBuilder sb = new StringBuilder("[VTHREADS] Relatório de pinning:");
+        pinnedBySite.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+                .forEach(e -> sb.append("\n  ").append(e.getValue().sum()).append("x ").append(e.getKey()));
+        log.warn(sb.toString());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) stream.close();
+    }
+}
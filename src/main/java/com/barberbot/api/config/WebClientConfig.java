@@ -1,10 +1,16 @@
 package com.barberbot.api.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.channel.ChannelOption;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @Configuration
 @RequiredArgsConstructor
@@ -15,9 +21,23 @@ public class WebClientConfig {
     
     @Bean
     public WebClient webClient() {
-        String apiKey = properties.getEvolution().getApiKey();
+        BarberBotProperties.Evolution evolution = properties.getEvolution();
+        String apiKey = evolution.getApiKey();
+
+        // Um pool só para a Evolution: conexões keep-alive reaproveitadas por envios e downloads
+        ConnectionProvider pool = ConnectionProvider.builder("evolution")
+                .maxConnections(evolution.getMaxConnections())
+                .pendingAcquireTimeout(Duration.ofSeconds(evolution.getResponseTimeoutSeconds()))
+                .maxIdleTime(Duration.ofSeconds(30))
+                .evictInBackground(Duration.ofSeconds(60))
+                .build();
+        HttpClient httpClient = HttpClient.create(pool)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, evolution.getConnectTimeoutMs())
+                .responseTimeout(Duration.ofSeconds(evolution.getResponseTimeoutSeconds()));
+
         return WebClient.builder()
-                .baseUrl(properties.getEvolution().getBaseUrl())
+                .baseUrl(evolution.getBaseUrl())
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .defaultHeader("apikey", apiKey != null && !apiKey.isEmpty() ? apiKey : "barberbot")
                 .defaultHeader("Content-Type", "application/json")
                 .build();
@@ -1,20 +1,26 @@
 package com.barberbot.api.controller;
 
+import com.barberbot.api.config.BarberBotProperties;
 import com.barberbot.api.dto.EvolutionWebhookDTO;
-import com.barberbot.api.service.OrchestratorService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.barberbot.api.journal.JournalProcessor;
+import com.barberbot.api.service.WebhookPreFilter;
+import com.barberbot.api.service.WebhookReader;
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Base64;
-import java.util.Map;
 
 @Slf4j
 @RestController
@@ -22,41 +28,63 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class WebhookController {
 
-    private final OrchestratorService orchestratorService;
-    private final ObjectMapper objectMapper;
+    private final JournalProcessor journalProcessor;
+    private final WebhookReader webhookReader;
+    private final WebhookPreFilter webhookPreFilter;
+    private final BarberBotProperties properties;
 
     /**
      * Endpoint que recebe webhooks da Evolution API (mensagens e QR Code).
-     * Aceita JSON flexivel para tratar evento de QR Code que o Manager nao exibe.
+     * O corpo é lido em streaming: mídias base64 vão direto para disco, sem passar por Map/String.
+     * Antes disso, o pré-filtro olha só os primeiros bytes e responde 200 na hora para o que não interessa.
      */
     @PostMapping
-    public ResponseEntity<String> receiveWebhook(@RequestBody Map<String, Object> body) {
-        try {
-            String event = body.get("event") != null ? body.get("event").toString() : null;
-            String instance = body.get("instance") != null ? body.get("instance").toString() : null;
+    public ResponseEntity<String> receiveWebhook(HttpServletRequest request) {
+        WebhookReader.Payload payload = null;
+        boolean delegated = false;
+        try (InputStream raw = request.getInputStream()) {
+            byte[] head = raw.readNBytes(properties.getWebhook().getPreFilterBytes());
+            if (webhookPreFilter.check(head, head.length) != null) {
+                return ResponseEntity.ok("Webhook ignorado");
+            }
+            InputStream body = new SequenceInputStream(new ByteArrayInputStream(head), raw);
+
+            payload = webhookReader.read(body);
+            String event = payload.getEvent();
+            String instance = payload.getInstance();
             // Só loga em INFO os eventos que importam (mensagens e QR); presence.update etc em DEBUG
-            boolean relevante = event != null && (
-                event.equalsIgnoreCase("messages.upsert") || event.equalsIgnoreCase("MESSAGES_UPSERT")
-                || event.equalsIgnoreCase("qrcode.updated") || event.equalsIgnoreCase("QRCODE_UPDATED"));
-            if (relevante) {
+            boolean isMessage = WebhookPreFilter.isMessageEvent(event);
+            boolean isQrCode = WebhookPreFilter.isQrCodeEvent(event);
+            if (isMessage || isQrCode) {
                 log.info("Webhook - {} | {}", event, instance);
             } else {
                 log.debug("Webhook - {} | {}", event, instance);
             }
 
             // Evento de QR Code: salva a imagem em arquivo (contorna bug do Manager que nao exibe)
-            if (event != null && (event.equalsIgnoreCase("qrcode.updated") || event.equalsIgnoreCase("QRCODE_UPDATED"))) {
-                String qrPath = salvarQrCodeDoWebhook(body);
+            if (isQrCode) {
+                String qrPath = salvarQrCodeDoWebhook(webhookReader.toTree(payload));
                 if (qrPath != null) {
                     log.info("QR Code salvo em: {}", qrPath);
                     return ResponseEntity.ok("QR Code recebido e salvo em: " + qrPath);
                 }
             }
 
-            // Evento de mensagens: delega para o orquestrador
-            if ("messages.upsert".equalsIgnoreCase(event) || "MESSAGES_UPSERT".equalsIgnoreCase(event)) {
-                EvolutionWebhookDTO webhook = objectMapper.convertValue(body, EvolutionWebhookDTO.class);
-                orchestratorService.processWebhook(webhook);
+            // Evento de mensagens: grava no journal (fsync) e só então confirma.
+            // O consumidor do journal entrega ao orquestrador, que libera a mídia ao terminar.
+            if (isMessage) {
+                if (journalProcessor.isBacklogged()) {
+                    log.warn("Journal com backlog cheio. Respondendo 503 para a Evolution reenviar.");
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Fila cheia, tente novamente");
+                }
+                EvolutionWebhookDTO webhook = webhookReader.toWebhook(payload);
+                try {
+                    journalProcessor.append(webhook);
+                } catch (IOException e) {
+                    log.error("Falha ao gravar webhook no journal: {}", e.getMessage());
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Falha ao registrar, tente novamente");
+                }
+                delegated = true;
             }
 
             return ResponseEntity.ok("Webhook recebido com sucesso");
@@ -64,6 +92,10 @@ public class WebhookController {
             log.error("Erro ao processar webhook: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Erro ao processar webhook");
+        } finally {
+            if (!delegated && payload != null && payload.getMedia() != null) {
+                payload.getMedia().release();
+            }
         }
     }
 
@@ -71,19 +103,17 @@ public class WebhookController {
      * Extrai o QR Code do payload do webhook e salva em arquivo PNG.
      * Retorna o caminho do arquivo ou null se nao houver base64.
      */
-    private String salvarQrCodeDoWebhook(Map<String, Object> body) {
+    private String salvarQrCodeDoWebhook(JsonNode body) {
         try {
-            Object data = body.get("data");
-            if (data == null || !(data instanceof Map)) return null;
+            JsonNode dataNode = body.get("data");
+            if (dataNode == null || !dataNode.isObject()) return null;
 
-            @SuppressWarnings("unchecked")
-            Map<String, Object> dataMap = (Map<String, Object>) data;
             String base64 = null;
 
-            if (dataMap.get("base64") != null) {
-                base64 = dataMap.get("base64").toString();
-            } else if (dataMap.get("qr") != null) {
-                String qr = dataMap.get("qr").toString();
+            if (dataNode.hasNonNull("base64")) {
+                base64 = dataNode.get("base64").asText();
+            } else if (dataNode.hasNonNull("qr")) {
+                String qr = dataNode.get("qr").asText();
                 if (qr.startsWith("data:image")) {
                     int comma = qr.indexOf(',');
                     if (comma > 0) base64 = qr.substring(comma + 1);
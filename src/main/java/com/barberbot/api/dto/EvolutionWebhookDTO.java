@@ -1,11 +1,15 @@
 package com.barberbot.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 @Data
 @JsonIgnoreProperties(ignoreUnknown = true)
+// Serializa só os campos anotados (vai para o journal); os helpers abaixo não viram JSON
+@JsonAutoDetect(getterVisibility = JsonAutoDetect.Visibility.NONE, isGetterVisibility = JsonAutoDetect.Visibility.NONE)
 public class EvolutionWebhookDTO {
 
     @JsonProperty("event") private String event;
@@ -13,6 +17,9 @@ public class EvolutionWebhookDTO {
     @JsonProperty("data") private DataDTO data;
     @JsonProperty("sender") private String sender;
 
+    /** Mídia inline (data.message.base64) já decodificada em disco pelo WebhookReader */
+    @JsonIgnore private MediaHandle media;
+
     public boolean isGroupChat() {
         return data != null && data.key != null && data.key.remoteJid != null && data.key.remoteJid.endsWith("@g.us");
     }
@@ -34,9 +41,14 @@ public class EvolutionWebhookDTO {
         return data != null && data.message != null && data.message.stickerMessage != null;
     }
 
-    public String getBase64() {
-        if (data != null && data.message != null) return data.message.base64;
-        return null;
+    // Clique numa lista ou botão enviado pelo bot
+    public boolean isInteractiveReply() {
+        return data != null && data.message != null
+                && (data.message.listResponseMessage != null || data.message.buttonsResponseMessage != null);
+    }
+
+    public void releaseMedia() {
+        if (media != null) media.release();
     }
     
     public String getMimeType() {
@@ -83,7 +95,6 @@ public class EvolutionWebhookDTO {
 
     @Data @JsonIgnoreProperties(ignoreUnknown = true)
     public static class MessageDTO {
-        @JsonProperty("base64") private String base64; 
         @JsonProperty("conversation") private String conversation;
         @JsonProperty("extendedTextMessage") private ExtendedTextMessageDTO extendedTextMessage;
         @JsonProperty("imageMessage") private ImageMessageDTO imageMessage;
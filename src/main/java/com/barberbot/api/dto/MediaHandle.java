@@ -0,0 +1,72 @@
+package com.barberbot.api.dto;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+/**
+ * Referência para uma mídia (áudio, imagem, CSV) já decodificada em disco.
+ * Evita manter o base64 de vários MB no heap durante toda a ida e volta com a IA.
+ */
+@Slf4j
+public final class MediaHandle {
+
+    private final Path path;
+    private final long size;
+    // Arquivo do cache de mídias: compartilhado, não pode ser apagado por quem usou
+    private final boolean shared;
+
+    public MediaHandle(Path path, long size) {
+        this(path, size, false);
+    }
+
+    public MediaHandle(Path path, long size, boolean shared) {
+        this.path = path;
+        this.size = size;
+        this.shared = shared;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public InputStream openStream() throws IOException {
+        return Files.newInputStream(path);
+    }
+
+    public byte[] readBytes() {
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Só para APIs que exigem base64 em memória (ex: ImageContent da LangChain4j).
+     */
+    public String readBase64() {
+        return Base64.getEncoder().encodeToString(readBytes());
+    }
+
+    /**
+     * Apaga o arquivo temporário. Pode ser chamado mais de uma vez; não faz nada para mídias do cache.
+     */
+    public void release() {
+        if (shared) return;
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Nao foi possivel apagar midia temporaria {}: {}", path, e.getMessage());
+        }
+    }
+}
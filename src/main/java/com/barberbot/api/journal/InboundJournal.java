@@ -0,0 +1,366 @@
+package com.barberbot.api.journal;
+
+import com.barberbot.api.config.BarberBotProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Journal append-only em segmentos mapeados em memória (mmap).
+ * <p>
+ * Cada registro é [tamanho int][crc32 int][bytes]. Posições são globais:
+ * segmento = posição / tamanhoDoSegmento. Quando um registro não cabe no segmento atual,
+ * o journal rola para o próximo arquivo. O fsync é feito em lotes (group commit) por uma
+ * thread própria: quem chama {@link #append} só retorna quando o seu registro está no disco.
+ * <p>
+ * A leitura ({@link #read}) só enxerga o que já é durável e é feita por um único consumidor.
+ * O offset confirmado pelo consumidor fica em committed.offset; segmentos inteiros abaixo dele são apagados.
+ */
+@Slf4j
+@Component
+public class InboundJournal {
+
+    private static final int HEADER = 8;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String OFFSET_FILE = "committed.offset";
+
+    public record Entry(long position, long next, byte[] data) {}
+
+    private final Path dir;
+    private final long segmentSize;
+    private final long flushIntervalMillis;
+    private final long maxBacklogBytes;
+    private final MeterRegistry meterRegistry;
+    private final Timer commitTimer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pendingWrites = lock.newCondition();
+    private final Condition durableAdvanced = lock.newCondition();
+
+    // Estado de escrita (protegido pelo lock)
+    private MappedByteBuffer writeBuffer;
+    private long writeSegment;
+    private long appendPosition;
+    private CompletableFuture<Void> nextCommit = new CompletableFuture<>();
+    private boolean hasPendingWrites;
+
+    private volatile long durablePosition;
+    private volatile long committedPosition;
+    private volatile boolean running;
+    private Thread flusher;
+
+    // Mapeamento de leitura: usado só pela thread consumidora
+    private long readSegment = -1;
+    private MappedByteBuffer readBuffer;
+
+    public InboundJournal(BarberBotProperties properties, MeterRegistry meterRegistry) {
+        BarberBotProperties.Journal config = properties.getJournal();
+        this.dir = Paths.get(config.getDir());
+        this.segmentSize = config.getSegmentSizeMb() * 1024L * 1024L;
+        this.flushIntervalMillis = config.getFlushIntervalMs();
+        this.maxBacklogBytes = config.getMaxBacklogMb() * 1024L * 1024L;
+        this.meterRegistry = meterRegistry;
+        this.commitTimer = Timer.builder("barberbot.journal.commit")
+                .description("Tempo do append até o fsync do lote")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(dir);
+        List<Long> segments = listSegments();
+        writeSegment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        writeBuffer = map(writeSegment, true);
+        appendPosition = writeSegment * segmentSize + recoverEnd(writeBuffer);
+        durablePosition = appendPosition;
+
+        Path offsetFile = dir.resolve(OFFSET_FILE);
+        long firstSegmentStart = (segments.isEmpty() ? 0 : segments.get(0)) * segmentSize;
+        committedPosition = Files.exists(offsetFile)
+                ? Math.max(Long.parseLong(Files.readString(offsetFile).trim()), firstSegmentStart)
+                : firstSegmentStart;
+
+        Gauge.builder("barberbot.journal.backlog.bytes", this, InboundJournal::backlogBytes)
+                .description("Bytes no journal ainda não confirmados pelo consumidor")
+                .register(meterRegistry);
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("[JOURNAL] Aberto em {} (pendente para replay: {} bytes)", dir.toAbsolutePath(), backlogBytes());
+    }
+
+    /**
+     * Grava o registro e espera o fsync do lote. Retorna a posição do registro.
+     */
+    public long append(byte[] data) throws IOException {
+        int recordSize = HEADER + data.length;
+        if (recordSize > segmentSize) throw new IOException("Registro maior que o segmento do journal: " + data.length);
+        long start = System.nanoTime();
+        long position;
+        CompletableFuture<Void> commit;
+        lock.lock();
+        try {
+            if (!running) throw new IOException("Journal fechado");
+            int offset = (int) (appendPosition - writeSegment * segmentSize);
+            if (segmentSize - offset < recordSize) {
+                roll();
+                offset = 0;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            writeBuffer.putInt(offset, data.length);
+            writeBuffer.putInt(offset + 4, (int) crc.getValue());
+            writeBuffer.put(offset + HEADER, data);
+            position = appendPosition;
+            appendPosition += recordSize;
+            commit = nextCommit;
+            hasPendingWrites = true;
+            pendingWrites.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            commit.get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IOException("Falha no fsync do journal", e);
+        }
+        commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return position;
+    }
+
+    /**
+     * Lê o registro durável a partir de {@code position}, pulando finais de segmento. Null se não houver.
+     */
+    public Entry read(long position) {
+        long durable = durablePosition;
+        while (position < durable) {
+            long segment = position / segmentSize;
+            int offset = (int) (position - segment * segmentSize);
+            if (segmentSize - offset < HEADER) {
+                position = (segment + 1) * segmentSize;
+                continue;
+            }
+            ByteBuffer buffer = readMapping(segment);
+            int length = buffer == null ? 0 : buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER + length > segmentSize) {
+                position = (segment + 1) * segmentSize;
+                continue;
+            }
+            byte[] data = new byte[length];
+            buffer.get(offset + HEADER, data);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                log.error("[JOURNAL] Registro corrompido na posição {}. Pulando o resto do segmento.", position);
+                position = (segment + 1) * segmentSize;
+                continue;
+            }
+            return new Entry(position, position + HEADER + length, data);
+        }
+        return null;
+    }
+
+    /**
+     * Espera até haver dados duráveis depois de {@code position} (ou o timeout).
+     */
+    public void awaitData(long position, long timeoutMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            if (durablePosition <= position && running) {
+                durableAdvanced.await(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCommittedPosition() {
+        return committedPosition;
+    }
+
+    /**
+     * Persiste o offset já processado e apaga os segmentos inteiros que ficaram para trás.
+     */
+    public void commit(long position) throws IOException {
+        if (position <= committedPosition) return;
+        Path tmp = dir.resolve(OFFSET_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(Long.toString(position).getBytes()));
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(OFFSET_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committedPosition = position;
+        compact(position / segmentSize);
+    }
+
+    public long backlogBytes() {
+        return durablePosition - committedPosition;
+    }
+
+    public boolean isBacklogged() {
+        return backlogBytes() > maxBacklogBytes;
+    }
+
+    // Chamado com o lock: fsync do segmento atual e abre o próximo
+    private void roll() throws IOException {
+        writeBuffer.force();
+        writeSegment++;
+        writeBuffer = map(writeSegment, true);
+        appendPosition = writeSegment * segmentSize;
+        log.info("[JOURNAL] Novo segmento {}", writeSegment);
+    }
+
+    private void flushLoop() {
+        while (running) {
+            try {
+                lock.lock();
+                try {
+                    while (!hasPendingWrites && running) pendingWrites.await();
+                } finally {
+                    lock.unlock();
+                }
+                // Janela do group commit: junta os appends que chegarem nesse intervalo no mesmo fsync
+                if (flushIntervalMillis > 0) Thread.sleep(flushIntervalMillis);
+                flushOnce();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("[JOURNAL] Erro no fsync: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void flushOnce() {
+        MappedByteBuffer buffer;
+        long position;
+        CompletableFuture<Void> batch;
+        lock.lock();
+        try {
+            buffer = writeBuffer;
+            position = appendPosition;
+            batch = nextCommit;
+            nextCommit = new CompletableFuture<>();
+            hasPendingWrites = false;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            buffer.force();
+        } catch (RuntimeException e) {
+            batch.completeExceptionally(e);
+            return;
+        }
+        lock.lock();
+        try {
+            durablePosition = Math.max(durablePosition, position);
+            durableAdvanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        batch.complete(null);
+    }
+
+    // Fim dos registros válidos de um segmento (usado ao reabrir depois de queda)
+    private int recoverEnd(MappedByteBuffer buffer) {
+        int offset = 0;
+        while (segmentSize - offset >= HEADER) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER + length > segmentSize) break;
+            byte[] data = new byte[length];
+            buffer.get(offset + HEADER, data);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                log.warn("[JOURNAL] Registro incompleto no fim do segmento (queda durante escrita). Descartado.");
+                break;
+            }
+            offset += HEADER + length;
+        }
+        return offset;
+    }
+
+    private ByteBuffer readMapping(long segment) {
+        if (segment != readSegment) {
+            try {
+                readBuffer = Files.exists(segmentPath(segment)) ? map(segment, false) : null;
+            } catch (IOException e) {
+                log.error("[JOURNAL] Nao foi possivel ler o segmento {}: {}", segment, e.getMessage());
+                readBuffer = null;
+            }
+            readSegment = segment;
+        }
+        return readBuffer;
+    }
+
+    private MappedByteBuffer map(long segment, boolean write) throws IOException {
+        Path path = segmentPath(segment);
+        if (write) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, segmentSize);
+        }
+    }
+
+    private void compact(long firstLiveSegment) throws IOException {
+        for (long segment : listSegments()) {
+            if (segment >= firstLiveSegment || segment >= writeSegment) break;
+            Files.deleteIfExists(segmentPath(segment));
+            log.info("[JOURNAL] Segmento {} compactado (já processado)", segment);
+        }
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return dir.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        lock.lock();
+        try {
+            running = false;
+            pendingWrites.signalAll();
+            durableAdvanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) flusher.join(2000);
+        flushOnce();
+    }
+}
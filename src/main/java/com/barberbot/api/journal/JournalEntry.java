@@ -0,0 +1,8 @@
+package com.barberbot.api.journal;
+
+import com.barberbot.api.dto.EvolutionWebhookDTO;
+
+/**
+ * O que vai para o journal: o webhook sem a mídia e o caminho da mídia já decodificada em disco (se houver).
+ */
+public record JournalEntry(String mediaPath, long mediaSize, EvolutionWebhookDTO webhook) {}
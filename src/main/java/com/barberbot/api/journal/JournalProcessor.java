@@ -0,0 +1,151 @@
+package com.barberbot.api.journal;
+
+import com.barberbot.api.dto.EvolutionWebhookDTO;
+import com.barberbot.api.dto.MediaHandle;
+import com.barberbot.api.service.ConversationDispatcher;
+import com.barberbot.api.service.OrchestratorService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Liga o webhook ao orquestrador passando pelo {@link InboundJournal}.
+ * <p>
+ * O controller chama {@link #append}: a mensagem é gravada e sincronizada no disco antes do 200.
+ * Uma thread consumidora lê o journal na ordem e entrega cada entrada ao ConversationDispatcher.
+ * O offset confirmado é a menor entrada ainda em processamento (uma mensagem que entrou numa rajada
+ * continua em processamento até a resposta da rajada sair); no restart tudo a partir dele
+ * é reprocessado (processed_messages descarta o que já tinha sido atendido, ver MessageDeduplicator).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JournalProcessor {
+
+    private static final long COMMIT_INTERVAL_MILLIS = 200;
+    private static final long RETRY_WHEN_FULL_MILLIS = 100;
+
+    private final InboundJournal journal;
+    private final ConversationDispatcher conversationDispatcher;
+    private final OrchestratorService orchestratorService;
+    private final ObjectMapper objectMapper;
+
+    // Posições das entradas entregues ao dispatcher e ainda não concluídas
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private volatile boolean running;
+    private Thread consumer;
+
+    public void append(EvolutionWebhookDTO webhook) throws IOException {
+        MediaHandle media = webhook.getMedia();
+        JournalEntry entry = new JournalEntry(
+                media != null ? media.getPath().toString() : null,
+                media != null ? media.getSize() : 0,
+                webhook);
+        journal.append(objectMapper.writeValueAsBytes(entry));
+    }
+
+    public boolean isBacklogged() {
+        return journal.isBacklogged();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        consumer = new Thread(this::consumeLoop, "journal-consumer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    private void consumeLoop() {
+        long position = journal.getCommittedPosition();
+        long lastCommit = System.currentTimeMillis();
+        while (running) {
+            try {
+                InboundJournal.Entry entry = journal.read(position);
+                if (entry == null) {
+                    commit(position);
+                    journal.awaitData(position, COMMIT_INTERVAL_MILLIS);
+                    continue;
+                }
+                if (deliver(entry)) {
+                    position = entry.next();
+                } else {
+                    // Dispatcher cheio: segura a leitura (o journal absorve o pico)
+                    Thread.sleep(RETRY_WHEN_FULL_MILLIS);
+                }
+                if (System.currentTimeMillis() - lastCommit >= COMMIT_INTERVAL_MILLIS) {
+                    commit(position);
+                    lastCommit = System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("[JOURNAL] Erro no consumidor: {}", e.getMessage(), e);
+            }
+        }
+        commit(position);
+    }
+
+    private boolean deliver(InboundJournal.Entry entry) {
+        JournalEntry journalEntry;
+        try {
+            journalEntry = objectMapper.readValue(entry.data(), JournalEntry.class);
+        } catch (IOException e) {
+            log.error("[JOURNAL] Entrada ilegível na posição {}. Descartada: {}", entry.position(), e.getMessage());
+            return true;
+        }
+        EvolutionWebhookDTO webhook = journalEntry.webhook();
+        if (journalEntry.mediaPath() != null) {
+            Path path = Paths.get(journalEntry.mediaPath());
+            // Se a mídia sumiu (ex: limpeza do tmp), o orquestrador busca de novo na Evolution
+            if (Files.exists(path)) webhook.setMedia(new MediaHandle(path, journalEntry.mediaSize()));
+        }
+        String remoteJid = webhook.getData() != null && webhook.getData().getKey() != null
+                ? webhook.getData().getKey().getRemoteJid() : null;
+
+        long position = entry.position();
+        inFlight.add(position);
+        boolean accepted = conversationDispatcher.dispatch(remoteJid != null ? remoteJid : "", () -> {
+            CompletableFuture<Void> done = null;
+            try {
+                done = orchestratorService.processWebhook(webhook);
+            } finally {
+                if (done == null) inFlight.remove(position);
+                else done.whenComplete((ignored, error) -> inFlight.remove(position));
+            }
+        });
+        if (!accepted) inFlight.remove(position);
+        return accepted;
+    }
+
+    // Confirma até a entrada mais antiga ainda em processamento (ou até onde já foi lido)
+    private void commit(long readPosition) {
+        Long oldest = inFlight.ceiling(Long.MIN_VALUE);
+        long safe = oldest != null ? oldest : readPosition;
+        try {
+            journal.commit(safe);
+        } catch (IOException e) {
+            log.error("[JOURNAL] Falha ao gravar offset: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (consumer != null) {
+            consumer.interrupt();
+            consumer.join(2000);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.barberbot.api.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "campaigns")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Campaign {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "admin_phone", nullable = false, length = 20)
+    private String adminPhone;
+
+    @Column(name = "message", nullable = false, columnDefinition = "TEXT")
+    private String message;
+
+    @Column(name = "prospecting", nullable = false)
+    private boolean prospecting;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private CampaignStatus status;
+
+    // Último cliente (ordem de id) já processado; a campanha continua daqui depois de pausa ou restart
+    @Column(name = "cursor_id")
+    private UUID cursorId;
+
+    @Column(name = "total", nullable = false)
+    private int total;
+
+    @Column(name = "sent", nullable = false)
+    private int sent;
+
+    @Column(name = "failed", nullable = false)
+    private int failed;
+
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    public boolean isActive() {
+        return status == CampaignStatus.RUNNING || status == CampaignStatus.PAUSED;
+    }
+
+    public enum CampaignStatus {
+        RUNNING,
+        PAUSED,
+        CANCELLED,
+        COMPLETED
+    }
+}
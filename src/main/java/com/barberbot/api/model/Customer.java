@@ -1,5 +1,6 @@
 package com.barberbot.api.model;
 
+import com.barberbot.api.service.PhoneNumbers;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -22,6 +23,10 @@ public class Customer {
     @Column(name = "phone_number", unique = true, nullable = false, length = 20)
     private String phoneNumber;
     
+    // Chave canônica do telefone (E.164 sem o nono dígito), indexada: acha o cliente com ou sem o 9
+    @Column(name = "phone_key")
+    private Long phoneKey;
+    
     @Column(name = "name", length = 255)
     private String name;
     
@@ -29,6 +34,13 @@ public class Customer {
     @Column(name = "paused_until")
     private LocalDateTime pausedUntil;
     
+    // Resumo das falas antigas (contexto do LLM), atualizado em segundo plano
+    @Column(name = "conversation_summary", columnDefinition = "TEXT")
+    private String conversationSummary;
+    
+    @Column(name = "summary_through")
+    private LocalDateTime summaryThrough;
+    
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
     
@@ -39,11 +51,18 @@ public class Customer {
     protected void onCreate() {
         createdAt = LocalDateTime.now();
         updatedAt = LocalDateTime.now();
+        updatePhoneKey();
     }
     
     @PreUpdate
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
+        updatePhoneKey();
+    }
+    
+    private void updatePhoneKey() {
+        long key = PhoneNumbers.canonical(phoneNumber);
+        phoneKey = key != 0 ? key : null;
     }
     
     // Método auxiliar para saber se está pausado agora
@@ -35,6 +35,28 @@ public class ScheduledTask {
     @Enumerated(EnumType.STRING)
     @Column(name = "status", nullable = false)
     private TaskStatus status;
+
+    // Idempotência: mesma chave = mesma tarefa (ex: lembrete de agenda por telefone + horário do corte)
+    @Column(name = "dedup_key", length = 100, unique = true)
+    private String dedupKey;
+
+    // Só para lembretes de agenda: horário do corte, nome e serviço lidos da foto
+    @Column(name = "appointment_time")
+    private LocalDateTime appointmentTime;
+
+    @Column(name = "customer_name")
+    private String customerName;
+
+    @Column(name = "service_name")
+    private String serviceName;
+
+    // Até quando a instância que reservou a tarefa (IN_PROGRESS) tem exclusividade sobre ela
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    // Instância dona da reserva (renova o lease enquanto o envio não termina)
+    @Column(name = "lease_owner")
+    private UUID leaseOwner;
     
     // --- CAMPOS QUE FALTAVAM ---
     @Column(name = "created_at", updatable = false)
@@ -57,8 +79,10 @@ public class ScheduledTask {
     
     public enum TaskStatus {
         PENDING,
+        IN_PROGRESS, // Reservada por uma instância (lease), aguardando o aceite da Evolution
         COMPLETED,
         FAILED,
-        CANCELLED
+        CANCELLED,
+        SKIPPED // Sem lembrete (sem telefone na base ou horário já passou), mas aparece na agenda
     }
 }
\ No newline at end of file
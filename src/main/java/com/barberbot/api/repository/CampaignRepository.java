@@ -0,0 +1,29 @@
+package com.barberbot.api.repository;
+
+import com.barberbot.api.model.Campaign;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface CampaignRepository extends JpaRepository<Campaign, UUID> {
+
+    List<Campaign> findByStatus(Campaign.CampaignStatus status);
+
+    // Campanha em andamento ou pausada (só uma por vez)
+    Optional<Campaign> findFirstByStatusInOrderByCreatedAtDesc(List<Campaign.CampaignStatus> statuses);
+
+    // Progresso no meio da página (não mexe no status, que é do fim da página)
+    @Modifying
+    @Transactional
+    @Query("UPDATE Campaign c SET c.cursorId = :cursor, c.sent = :sent, c.failed = :failed, " +
+           "c.updatedAt = CURRENT_TIMESTAMP WHERE c.id = :id")
+    int checkpoint(@Param("id") UUID id, @Param("cursor") UUID cursor, @Param("sent") int sent, @Param("failed") int failed);
+}
@@ -2,7 +2,13 @@ package com.barberbot.api.repository;
 
 import com.barberbot.api.model.Customer;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -10,6 +16,14 @@ import java.util.UUID;
 public interface CustomerRepository extends JpaRepository<Customer, UUID> {
     Optional<Customer> findByPhoneNumber(String phoneNumber);
 
+    // Pela chave canônica (idx_customers_phone_key); o mais antigo ganha se houver duplicata com/sem o 9
+    Optional<Customer> findFirstByPhoneKeyOrderByCreatedAtAsc(Long phoneKey);
+
     boolean existsByPhoneNumber(String phoneNumber);
     Optional<Customer> findByNameIgnoreCase(String name);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Customer c SET c.conversationSummary = :summary, c.summaryThrough = :through WHERE c.id = :id")
+    int updateConversationSummary(@Param("id") UUID id, @Param("summary") String summary, @Param("through") LocalDateTime through);
 }
@@ -6,14 +6,13 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+
 import java.util.List;
 import java.util.UUID;
 
 @Repository
 public interface InteractionRepository extends JpaRepository<Interaction, UUID> {
 
-    boolean existsByMessageId(String messageId);
-    
     List<Interaction> findByCustomerIdOrderByTimestampDesc(UUID customerId);
     
     @Query("SELECT i FROM Interaction i WHERE i.customer.id = :customerId ORDER BY i.timestamp DESC")
@@ -2,9 +2,14 @@ package com.barberbot.api.repository;
 
 import com.barberbot.api.model.ScheduledTask;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -25,4 +30,55 @@ public interface ScheduledTaskRepository extends JpaRepository<ScheduledTask, UU
     );
     
     List<ScheduledTask> findByCustomerPhone(String customerPhone);
-}
\ No newline at end of file
+
+    // Resultado dos envios, em lote (aceite ou falha definitiva da Evolution). Só conclui a reserva da própria instância.
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScheduledTask t SET t.status = :status, t.leaseUntil = NULL, t.leaseOwner = NULL, " +
+           "t.updatedAt = CURRENT_TIMESTAMP WHERE t.id IN :ids AND t.status = 'IN_PROGRESS' AND t.leaseOwner = :owner")
+    int finishAll(@Param("ids") Collection<UUID> ids, @Param("status") ScheduledTask.TaskStatus status,
+                  @Param("owner") UUID owner);
+
+    // Envios ainda na fila (rate limit, Evolution fora): estende o lease para a tarefa não voltar para PENDING
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScheduledTask t SET t.leaseUntil = :until " +
+           "WHERE t.id IN :ids AND t.status = 'IN_PROGRESS' AND t.leaseOwner = :owner")
+    int renewLeases(@Param("ids") Collection<UUID> ids, @Param("owner") UUID owner, @Param("until") LocalDateTime until);
+
+    // Cliente em atendimento humano: devolve para a fila mais tarde
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScheduledTask t SET t.status = 'PENDING', t.executionTime = :at, t.leaseUntil = NULL, " +
+           "t.leaseOwner = NULL, t.updatedAt = CURRENT_TIMESTAMP WHERE t.id IN :ids AND t.status = 'IN_PROGRESS'")
+    int postponeAll(@Param("ids") Collection<UUID> ids, @Param("at") LocalDateTime at);
+
+    // Lease vencido (instância derrubada no meio do envio): volta para a fila
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScheduledTask t SET t.status = 'PENDING', t.leaseUntil = NULL, t.leaseOwner = NULL " +
+           "WHERE t.status = 'IN_PROGRESS' AND (t.leaseUntil IS NULL OR t.leaseUntil < :now)")
+    int requeueExpiredLeases(@Param("now") LocalDateTime now);
+
+    // Agenda de um período (índice task_type + appointment_time); substituídos não aparecem
+    @Query("SELECT t FROM ScheduledTask t WHERE t.taskType = :type AND t.appointmentTime >= :from " +
+           "AND t.appointmentTime < :to AND t.status <> 'CANCELLED' ORDER BY t.appointmentTime")
+    List<ScheduledTask> findAgenda(@Param("type") String taskType,
+                                   @Param("from") LocalDateTime from,
+                                   @Param("to") LocalDateTime to);
+
+    // Próximo horário com tarefa pendente (para acordar o motor de disparos na hora exata)
+    @Query("SELECT min(t.executionTime) FROM ScheduledTask t WHERE t.status = 'PENDING'")
+    LocalDateTime findNextPendingExecution();
+
+    // Nova foto do mesmo dia: o que sumiu da agenda (desmarcado) não recebe lembrete
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScheduledTask t SET t.status = 'CANCELLED', t.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE t.taskType = :type AND t.status IN ('PENDING', 'SKIPPED') " +
+           "AND t.appointmentTime >= :from AND t.appointmentTime < :to AND t.dedupKey NOT IN :keys")
+    int cancelMissing(@Param("type") String taskType,
+                      @Param("from") LocalDateTime from,
+                      @Param("to") LocalDateTime to,
+                      @Param("keys") Collection<String> keepKeys);
+}
@@ -4,19 +4,35 @@ import com.barberbot.api.config.BarberBotProperties;
 import com.barberbot.api.model.ScheduledTask;
 import com.barberbot.api.repository.CustomerRepository;
 import com.barberbot.api.repository.ScheduledTaskRepository;
+import com.barberbot.api.service.AgendaService;
 import com.barberbot.api.service.CustomerService;
+import com.barberbot.api.service.ReminderEngine;
 import com.barberbot.api.service.WhatsAppService;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import reactor.core.scheduler.Schedulers;
 
+import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Slf4j
 @Component
@@ -28,48 +44,195 @@ public class BarberBotScheduler {
     private final CustomerService customerService;
     private final CustomerRepository customerRepository;
     private final BarberBotProperties properties;
+    private final ReminderEngine reminderEngine;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private static final String WAKEUP_KEY = "dispatch";
+
+    // Reserva um lote: linhas travadas por outra instância são puladas, e o UPDATE já é o commit da reserva.
+    // Visível no pacote para o ClaimBenchmark medir exatamente a mesma query
+    static final String CLAIM_SQL = """
+            UPDATE scheduled_tasks t
+            SET status = 'IN_PROGRESS', lease_until = ?, lease_owner = ?, updated_at = ?
+            FROM (SELECT id FROM scheduled_tasks
+                  WHERE status = 'PENDING' AND execution_time <= ?
+                  ORDER BY execution_time
+                  LIMIT ?
+                  FOR UPDATE SKIP LOCKED) due
+            WHERE t.id = due.id
+            RETURNING t.id, t.customer_phone, t.message_content, t.appointment_time
+            """;
+
+    private record Claimed(UUID id, String phone, String content, LocalDateTime appointmentTime) {}
+
+    // Identifica as reservas desta instância (nova a cada subida)
+    private final UUID instanceId = UUID.randomUUID();
+
+    // Envios desta instância ainda sem resposta, e resultados esperando o update em lote
+    private final Set<UUID> sending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean refillScheduled = new AtomicBoolean();
+    private final Queue<UUID> completed = new ConcurrentLinkedQueue<>();
+    private final Queue<UUID> failed = new ConcurrentLinkedQueue<>();
+
+    // Uma rodada por vez (agendada, wakeAt e refill). Lock em vez de synchronized: a rodada faz I/O no banco
+    // e pode rodar em virtual thread, que ficaria presa à thread do SO dentro de um monitor
+    private final ReentrantLock roundLock = new ReentrantLock();
 
     /**
-     * MOTOR DE DISPAROS (Roda a cada 60 segundos)
-     * Verifica o banco e envia as mensagens na hora certa.
+     * MOTOR DE DISPAROS (Roda a cada 60 segundos, e no minuto exato da próxima tarefa via {@link #wakeAt})
+     * Reserva lotes de tarefas vencidas com SKIP LOCKED (várias instâncias drenam a fila sem envio duplo),
+     * envia fora de qualquer transação e grava os resultados em lote.
+     * No máximo claim-batch-size tarefas em envio por instância. Envio parado na fila (rate limit, Evolution fora)
+     * pode passar do lease-seconds: a cada rodada a instância renova o lease do que ainda está enviando, e só o lease
+     * de instância que caiu vence.
      */
     @Scheduled(fixedRate = 60000)
-    @Transactional
     public void processScheduledTasks() {
-        LocalDateTime now = LocalDateTime.now();
-        
-        // Busca tarefas que já deram o horário e ainda não foram enviadas
-        List<ScheduledTask> pendingTasks = taskRepository.findByStatusAndExecutionTimeBefore(
-                ScheduledTask.TaskStatus.PENDING, now
-        );
-
-        if (pendingTasks.isEmpty()) return;
+        roundLock.lock();
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            flushResults();
+            renewLeases(now);
 
-        log.info("Processando {} tarefas pendentes...", pendingTasks.size());
+            // Reserva de instância que caiu no meio do envio: volta para PENDING
+            int requeued = taskRepository.requeueExpiredLeases(now);
+            if (requeued > 0) log.warn("{} tarefas com lease vencido voltaram para a fila.", requeued);
 
-        for (ScheduledTask task : pendingTasks) {
-            try {
-                String phone = task.getCustomerPhone();
-
-                // Se o cliente estiver pausado (falando com o Luiz), adia o lembrete por 1 hora
-                if (customerService.isCustomerPaused(phone)) {
-                    log.info("Cliente {} em pausa. Adiando tarefa.", phone);
-                    task.setExecutionTime(LocalDateTime.now().plusHours(1));
-                    taskRepository.save(task);
-                    continue;
+            int batchSize = properties.getSchedule().getClaimBatchSize();
+            int room = batchSize - sending.size();
+            if (room > 0) {
+                List<Claimed> claimed = claim(room, now);
+                if (!claimed.isEmpty()) {
+                    log.info("Processando {} tarefas pendentes...", claimed.size());
+                    dispatch(claimed, now);
                 }
+            }
+
+            // Só arma para o futuro: atraso acima da cota (next no passado) é drenado pelo refill e pelo minuto,
+            // e rearmar no passado dispararia de novo na hora, em loop, sem nada para reservar
+            LocalDateTime next = taskRepository.findNextPendingExecution();
+            if (next != null && next.isAfter(now)) wakeAt(next);
+        } finally {
+            roundLock.unlock();
+        }
+    }
+
+    private List<Claimed> claim(int limit, LocalDateTime now) {
+        LocalDateTime lease = now.plusSeconds(properties.getSchedule().getLeaseSeconds());
+        return jdbcTemplate.query(CLAIM_SQL,
+                (rs, i) -> new Claimed(rs.getObject("id", UUID.class), rs.getString("customer_phone"),
+                        rs.getString("message_content"),
+                        rs.getTimestamp("appointment_time") != null ? rs.getTimestamp("appointment_time").toLocalDateTime() : null),
+                Timestamp.valueOf(lease), instanceId, Timestamp.valueOf(now), Timestamp.valueOf(now), limit);
+    }
+
+    private void renewLeases(LocalDateTime now) {
+        if (sending.isEmpty()) return;
+        List<UUID> ids = List.copyOf(sending);
+        int renewed = taskRepository.renewLeases(ids, instanceId, now.plusSeconds(properties.getSchedule().getLeaseSeconds()));
+        if (renewed < ids.size()) log.debug("Lease renovado para {} de {} envios em andamento.", renewed, ids.size());
+    }
 
-                whatsAppService.sendTextMessage(phone, task.getMessageContent());
+    private void dispatch(List<Claimed> claimed, LocalDateTime now) {
+        List<UUID> skipped = new ArrayList<>();
+        List<UUID> postponed = new ArrayList<>();
 
-                task.setStatus(ScheduledTask.TaskStatus.COMPLETED);
-                taskRepository.save(task);
+        for (Claimed task : claimed) {
+            // Lembrete de um corte que já passou (ex: app fora do ar na hora): não envia mais
+            if (task.appointmentTime() != null && !task.appointmentTime().isAfter(now)) {
+                log.info("Lembrete {} perdeu o horário do corte. Ignorado.", task.id());
+                skipped.add(task.id());
+                continue;
+            }
+
+            // Se o cliente estiver pausado (falando com o Luiz), adia o lembrete por 1 hora
+            if (customerService.isCustomerPaused(task.phone())) {
+                log.info("Cliente {} em pausa. Adiando tarefa.", task.phone());
+                postponed.add(task.id());
+                continue;
+            }
 
+            sending.add(task.id());
+            try {
+                whatsAppService.sendScheduled(task.phone(), task.content())
+                        .defaultIfEmpty("") // 2xx sem corpo também é aceite
+                        .publishOn(Schedulers.boundedElastic())
+                        .subscribe(
+                                ack -> finished(task.id(), completed),
+                                e -> {
+                                    log.error("Tarefa {} falhou após as tentativas: {}", task.id(), e.getMessage());
+                                    finished(task.id(), failed);
+                                });
             } catch (Exception e) {
-                log.error("Erro na tarefa {}: {}", task.getId(), e.getMessage());
-                task.setStatus(ScheduledTask.TaskStatus.FAILED);
-                taskRepository.save(task);
+                log.error("Erro na tarefa {}: {}", task.id(), e.getMessage());
+                finished(task.id(), failed);
             }
         }
+
+        if (!skipped.isEmpty()) taskRepository.finishAll(skipped, ScheduledTask.TaskStatus.SKIPPED, instanceId);
+        if (!postponed.isEmpty()) taskRepository.postponeAll(postponed, now.plusHours(1));
+    }
+
+    /**
+     * Resultado de um envio. Com metade da cota livre, reserva o próximo lote sem esperar o minuto.
+     */
+    private void finished(UUID id, Queue<UUID> results) {
+        results.add(id);
+        sending.remove(id);
+        int batchSize = properties.getSchedule().getClaimBatchSize();
+        if (sending.size() <= batchSize / 2 && refillScheduled.compareAndSet(false, true)) {
+            Schedulers.boundedElastic().schedule(() -> {
+                refillScheduled.set(false);
+                try {
+                    processScheduledTasks();
+                } catch (Exception e) {
+                    log.error("Erro ao reservar o próximo lote: {}", e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Grava os resultados acumulados num UPDATE por status (em vez de um save por tarefa).
+     */
+    @Scheduled(fixedDelay = 5000)
+    @PreDestroy
+    public void flushResults() {
+        flush(completed, ScheduledTask.TaskStatus.COMPLETED);
+        flush(failed, ScheduledTask.TaskStatus.FAILED);
+    }
+
+    private void flush(Queue<UUID> results, ScheduledTask.TaskStatus status) {
+        List<UUID> ids = new ArrayList<>();
+        for (UUID id; (id = results.poll()) != null; ) ids.add(id);
+        if (ids.isEmpty()) return;
+        try {
+            taskRepository.finishAll(ids, status, instanceId);
+        } catch (Exception e) {
+            results.addAll(ids); // Tenta de novo no próximo flush
+            log.error("Erro ao gravar {} resultados de tarefas: {}", ids.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Acorda o motor de disparos no instante {@code when} (hora local do servidor), sem esperar o próximo minuto.
+     * Se o app cair antes, o @Scheduled pega a tarefa atrasada ao voltar.
+     */
+    public void wakeAt(LocalDateTime when) {
+        ZonedDateTime at = when.atZone(ZoneId.systemDefault());
+        reminderEngine.schedule(WAKEUP_KEY + ":" + at.toEpochSecond(), at, at.plusHours(1),
+                this::processScheduledTasks);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void armAfterStartup() {
+        try {
+            LocalDateTime next = taskRepository.findNextPendingExecution();
+            if (next != null) wakeAt(next);
+        } catch (Exception e) {
+            log.warn("Não foi possível armar o próximo disparo: {}", e.getMessage());
+        }
     }
 
     /**
@@ -108,11 +271,11 @@ public class BarberBotScheduler {
             
             // Define o intervalo de "Amanhã"
             LocalDateTime startOfTomorrow = LocalDate.now().plusDays(1).atStartOfDay();
-            LocalDateTime endOfTomorrow = LocalDate.now().plusDays(1).atTime(LocalTime.MAX);
+            LocalDateTime endOfTomorrow = LocalDate.now().plusDays(2).atStartOfDay();
             
             // Verifica se JÁ EXISTEM lembretes criados para amanhã
-            List<ScheduledTask> tomorrowsTasks = taskRepository.findByExecutionTimeBetweenAndTaskType(
-                startOfTomorrow, endOfTomorrow, "REMINDER"
+            List<ScheduledTask> tomorrowsTasks = taskRepository.findAgenda(
+                AgendaService.TASK_TYPE, startOfTomorrow, endOfTomorrow
             );
             
             StringBuilder message = new StringBuilder();
@@ -130,12 +293,12 @@ public class BarberBotScheduler {
                 
                 DateTimeFormatter timeFmt = DateTimeFormatter.ofPattern("HH:mm");
                 for (ScheduledTask task : tomorrowsTasks) {
-                    // +1 hora porque o lembrete é enviado 1h antes do corte real
-                    String corteTime = task.getExecutionTime().plusHours(1).format(timeFmt);
+                    String corteTime = task.getAppointmentTime().format(timeFmt);
                     String phone = task.getCustomerPhone().length() > 4 ? 
-                        task.getCustomerPhone().substring(task.getCustomerPhone().length() - 4) : "---";
+                        "Final " + task.getCustomerPhone().substring(task.getCustomerPhone().length() - 4) : "⚠️ sem telefone";
                         
-                    message.append("✂️ ").append(corteTime).append(" - Final ").append(phone).append("\n");
+                    message.append("✂️ ").append(corteTime).append(" - ").append(task.getCustomerName())
+                            .append(" (").append(phone).append(")\n");
                 }
                 message.append("\nPode descansar que eu cuido dos avisos! 💤");
             }
@@ -0,0 +1,100 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.config.BarberBotProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Leituras de agenda já feitas, pela impressão digital do print ({@link AgendaImagePreprocessor.Fingerprint}).
+ * <p>
+ * O Luiz costuma reenviar o mesmo print (às vezes recomprimido pelo WhatsApp): pHash a até {@value #MAX_HASH_DISTANCE}
+ * bits e imagem praticamente igual bloco a bloco devolvem o JSON anterior sem chamar o modelo. Entradas expiram por TTL
+ * e também à meia-noite: o JSON traz datas relativas ("Hoje", "Amanhã", "Sexta"), que o {@link AgendaService}
+ * resolve pelo dia em que processa; no dia seguinte a mesma leitura apontaria para outras datas.
+ */
+@Slf4j
+@Component
+public class AgendaImageCache {
+
+    private static final int MAX_HASH_DISTANCE = 10;
+    // Recompressão do WhatsApp: ~3 tons por bloco; um dígito trocado num horário: 60+
+    private static final int MAX_BLOCK_DIFF = 16;
+
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Ordem de acesso: o primeiro é o menos usado recentemente
+    private final LinkedHashMap<AgendaImagePreprocessor.Fingerprint, Cached> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final Counter hits;
+    private final Counter misses;
+
+    private record Cached(String json, long createdAt, LocalDate readOn) {}
+
+    public AgendaImageCache(BarberBotProperties properties, MeterRegistry meterRegistry) {
+        this.maxEntries = properties.getVision().getCacheEntries();
+        this.ttlMillis = properties.getVision().getCacheTtlHours() * 3_600_000L;
+        this.hits = Counter.builder("barberbot.agenda.cache").tag("result", "hit")
+                .description("Prints de agenda já lidos (sem chamar o modelo)").register(meterRegistry);
+        this.misses = Counter.builder("barberbot.agenda.cache").tag("result", "miss")
+                .description("Prints de agenda enviados ao modelo").register(meterRegistry);
+    }
+
+    /**
+     * JSON da leitura anterior do mesmo print, ou null.
+     */
+    public String get(AgendaImagePreprocessor.Fingerprint fingerprint) {
+        if (fingerprint == null) return null;
+        long now = System.currentTimeMillis();
+        LocalDate today = LocalDate.now(AgendaService.ZONE);
+        lock.lock();
+        try {
+            Iterator<Map.Entry<AgendaImagePreprocessor.Fingerprint, Cached>> it = entries.entrySet().iterator();
+            AgendaImagePreprocessor.Fingerprint found = null;
+            while (it.hasNext()) {
+                var e = it.next();
+                if (now - e.getValue().createdAt() > ttlMillis || !e.getValue().readOn().equals(today)) {
+                    it.remove();
+                    continue;
+                }
+                if (found == null && e.getKey().distance(fingerprint) <= MAX_HASH_DISTANCE
+                        && e.getKey().maxBlockDiff(fingerprint) <= MAX_BLOCK_DIFF) {
+                    found = e.getKey();
+                }
+            }
+            if (found == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            log.info("[VISÃO] Print já lido antes: agenda reaproveitada sem chamar o modelo.");
+            return entries.get(found).json(); // get() marca como usado recentemente
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(AgendaImagePreprocessor.Fingerprint fingerprint, String json) {
+        if (fingerprint == null || json == null) return;
+        lock.lock();
+        try {
+            entries.put(fingerprint, new Cached(json, System.currentTimeMillis(), LocalDate.now(AgendaService.ZONE)));
+            Iterator<AgendaImagePreprocessor.Fingerprint> it = entries.keySet().iterator();
+            while (entries.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.config.BarberBotProperties;
+import com.barberbot.api.dto.MediaHandle;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Prepara o print da agenda para o modelo de visão, só com ImageIO.
+ * <p>
+ * Corta bordas lisas, reduz ao tamanho que o modelo realmente usa (menor lado {@code maxShortSide}) e reenvia
+ * em JPEG. Print de rolagem, muito mais alto que largo, vira partes sobrepostas em vez de ser espremido até
+ * ficar ilegível. Também calcula a impressão digital ({@link Fingerprint}) usada pelo {@link AgendaImageCache}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AgendaImagePreprocessor {
+
+    private static final int BORDER_TOLERANCE = 16; // Diferença máxima por canal para um pixel "igual à borda"
+    private static final int MIN_CONTENT_PX = 32;
+    private static final int HASH_SIZE = 32;     // Imagem reduzida para a DCT do pHash
+    private static final int HASH_BITS_SIDE = 8; // 8×8 frequências baixas = 64 bits
+    // Versão em cinza com 256 de largura para confirmar duplicatas, comparada em blocos 4×4
+    private static final int DETAIL_WIDTH = 256;
+    private static final int DETAIL_BLOCK = 4;
+
+    private final BarberBotProperties properties;
+
+    /**
+     * Partes prontas para envio (na ordem, de cima para baixo). {@code fingerprint} é null quando o ImageIO
+     * não lê o formato; aí a imagem segue como veio, numa parte só.
+     */
+    public record Prepared(List<Tile> tiles, long originalBytes, Fingerprint fingerprint) {
+        public long uploadBytes() {
+            long total = 0;
+            for (Tile tile : tiles) total += tile.bytes().length;
+            return total;
+        }
+    }
+
+    public record Tile(byte[] bytes, String mimeType) {}
+
+    /**
+     * pHash (DCT 32×32 → 64 bits) para achar candidatas rápido, e uma versão em cinza de 256 px para confirmar:
+     * prints do mesmo app têm pHash parecido, mas um horário trocado já muda um bloco 4×4 inteiro,
+     * enquanto a recompressão do WhatsApp mexe só alguns tons. Calculada antes do recorte (alinhamento exato).
+     */
+    public record Fingerprint(long phash, int height, byte[] detail) {
+
+        public int distance(Fingerprint other) {
+            return Long.bitCount(phash ^ other.phash);
+        }
+
+        /**
+         * Maior diferença média de tom entre blocos 4×4 correspondentes (255 se as proporções não batem).
+         */
+        public int maxBlockDiff(Fingerprint other) {
+            if (Math.abs(height - other.height) > 1) return 255;
+            int rows = Math.min(height, other.height);
+            int max = 0;
+            for (int by = 0; by + DETAIL_BLOCK <= rows; by += DETAIL_BLOCK) {
+                for (int bx = 0; bx + DETAIL_BLOCK <= DETAIL_WIDTH; bx += DETAIL_BLOCK) {
+                    int sum = 0;
+                    for (int y = by; y < by + DETAIL_BLOCK; y++) {
+                        for (int x = bx; x < bx + DETAIL_BLOCK; x++) {
+                            int i = y * DETAIL_WIDTH + x;
+                            sum += Math.abs((detail[i] & 0xff) - (other.detail[i] & 0xff));
+                        }
+                    }
+                    max = Math.max(max, sum / (DETAIL_BLOCK * DETAIL_BLOCK));
+                }
+            }
+            return max;
+        }
+    }
+
+    public Prepared prepare(MediaHandle image, String mimeType) throws IOException {
+        BufferedImage source;
+        try (InputStream in = image.openStream()) {
+            source = ImageIO.read(in);
+        }
+        if (source == null) {
+            // Formato que o ImageIO não lê (ex: webp): segue o original
+            log.warn("[VISÃO] Formato de imagem não suportado ({}), enviando sem pré-processar.", mimeType);
+            return new Prepared(List.of(new Tile(image.readBytes(), mimeType)), image.getSize(), null);
+        }
+
+        BarberBotProperties.Vision config = properties.getVision();
+        BufferedImage rgb = toRgb(source);
+        Fingerprint fingerprint = fingerprint(rgb);
+        BufferedImage content = rgb;
+        for (int i = 0; i < 3; i++) { // Moldura dentro de moldura (ex: faixa preta + margem branca)
+            BufferedImage cropped = cropBorders(content);
+            if (cropped == content) break;
+            content = cropped;
+        }
+
+        int width = content.getWidth();
+        int height = content.getHeight();
+        boolean tall = height > width * config.getTileAspect();
+        double scale = tall
+                ? Math.min(1.0, (double) config.getMaxShortSide() / width)
+                : Math.min(1.0, Math.min((double) config.getMaxShortSide() / Math.min(width, height),
+                                         (double) config.getMaxLongSide() / Math.max(width, height)));
+        BufferedImage scaled = resize(content, Math.max(1, (int) Math.round(width * scale)),
+                Math.max(1, (int) Math.round(height * scale)));
+
+        List<BufferedImage> parts = tall ? tiles(scaled, config) : List.of(scaled);
+        List<Tile> tiles = new ArrayList<>(parts.size());
+        for (BufferedImage part : parts) tiles.add(encode(part, config.getJpegQuality()));
+        if (tiles.size() == 1 && tiles.get(0).bytes().length >= image.getSize()) {
+            // O modelo reduz do mesmo jeito (mesmos tokens): vale o que for menor para subir
+            return new Prepared(List.of(new Tile(image.readBytes(), mimeType)), image.getSize(), fingerprint);
+        }
+        return new Prepared(tiles, image.getSize(), fingerprint);
+    }
+
+    // JPEG costuma ganhar; print com poucas cores (fundo liso, texto) às vezes fica menor em PNG
+    private static Tile encode(BufferedImage image, float quality) throws IOException {
+        byte[] jpeg = encodeJpeg(image, quality);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.size() < jpeg.length ? new Tile(png.toByteArray(), "image/png") : new Tile(jpeg, "image/jpeg");
+    }
+
+    // Sem alfa nem paleta: o JPEG e a comparação de pixels trabalham em RGB
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) return image;
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        g.setColor(Color.WHITE); // Transparente vira branco, não preto
+        g.fillRect(0, 0, rgb.getWidth(), rgb.getHeight());
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return rgb;
+    }
+
+    /**
+     * Tira as faixas de cor lisa (igual ao canto superior esquerdo) das quatro bordas.
+     */
+    static BufferedImage cropBorders(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int background = image.getRGB(0, 0);
+
+        int top = 0;
+        while (top < height - MIN_CONTENT_PX && rowIs(image, top, background)) top++;
+        int bottom = height - 1;
+        while (bottom > top + MIN_CONTENT_PX && rowIs(image, bottom, background)) bottom--;
+        int left = 0;
+        while (left < width - MIN_CONTENT_PX && columnIs(image, left, top, bottom, background)) left++;
+        int right = width - 1;
+        while (right > left + MIN_CONTENT_PX && columnIs(image, right, top, bottom, background)) right--;
+
+        if (top == 0 && left == 0 && bottom == height - 1 && right == width - 1) return image;
+        return image.getSubimage(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    private static boolean rowIs(BufferedImage image, int y, int color) {
+        for (int x = 0; x < image.getWidth(); x++) {
+            if (!similar(image.getRGB(x, y), color)) return false;
+        }
+        return true;
+    }
+
+    private static boolean columnIs(BufferedImage image, int x, int top, int bottom, int color) {
+        for (int y = top; y <= bottom; y++) {
+            if (!similar(image.getRGB(x, y), color)) return false;
+        }
+        return true;
+    }
+
+    private static boolean similar(int a, int b) {
+        return Math.abs(((a >> 16) & 0xff) - ((b >> 16) & 0xff)) <= BORDER_TOLERANCE
+                && Math.abs(((a >> 8) & 0xff) - ((b >> 8) & 0xff)) <= BORDER_TOLERANCE
+                && Math.abs((a & 0xff) - (b & 0xff)) <= BORDER_TOLERANCE;
+    }
+
+    /**
+     * Redução em passos de metade (bilinear): o texto pequeno do print não vira serrilhado como numa redução direta.
+     */
+    static BufferedImage resize(BufferedImage image, int targetWidth, int targetHeight) {
+        BufferedImage current = image;
+        int w = image.getWidth();
+        int h = image.getHeight();
+        if (w == targetWidth && h == targetHeight) return image;
+        do {
+            w = Math.max(targetWidth, w / 2);
+            h = Math.max(targetHeight, h / 2);
+            if (w < targetWidth * 2 && h < targetHeight * 2) {
+                w = targetWidth;
+                h = targetHeight;
+            }
+            BufferedImage next = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, w, h, null);
+            g.dispose();
+            current = next;
+        } while (w != targetWidth || h != targetHeight);
+        return current;
+    }
+
+    /**
+     * Partes de no máximo largura × tileAspect de altura, de tamanhos iguais, sobrepostas em tileOverlapPx.
+     */
+    private static List<BufferedImage> tiles(BufferedImage image, BarberBotProperties.Vision config) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int maxTile = (int) (width * config.getTileAspect());
+        int overlap = Math.min(config.getTileOverlapPx(), maxTile / 4);
+        int count = (int) Math.ceil((double) (height - overlap) / (maxTile - overlap));
+        int tileHeight = (int) Math.ceil((double) (height + (count - 1) * overlap) / count);
+
+        List<BufferedImage> tiles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int y = Math.min(i * (tileHeight - overlap), height - tileHeight);
+            tiles.add(image.getSubimage(0, y, width, tileHeight));
+        }
+        return tiles;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    static Fingerprint fingerprint(BufferedImage image) {
+        // pHash: DCT da imagem 32×32 em cinza; bit = frequência baixa acima da mediana
+        double[][] pixels = new double[HASH_SIZE][HASH_SIZE];
+        BufferedImage small = resize(image, HASH_SIZE, HASH_SIZE);
+        for (int y = 0; y < HASH_SIZE; y++) {
+            for (int x = 0; x < HASH_SIZE; x++) pixels[y][x] = gray(small.getRGB(x, y));
+        }
+        double[][] dct = dct(pixels);
+        double[] low = new double[HASH_BITS_SIDE * HASH_BITS_SIDE];
+        for (int y = 0; y < HASH_BITS_SIDE; y++) {
+            for (int x = 0; x < HASH_BITS_SIDE; x++) low[y * HASH_BITS_SIDE + x] = dct[y][x];
+        }
+        double[] sorted = Arrays.copyOfRange(low, 1, low.length); // Sem o termo DC (brilho médio)
+        Arrays.sort(sorted);
+        double median = sorted[sorted.length / 2];
+        long hash = 0;
+        for (int i = 0; i < low.length; i++) {
+            if (low[i] > median) hash |= 1L << i;
+        }
+
+        int height = Math.max(1, (int) Math.round((double) image.getHeight() * DETAIL_WIDTH / image.getWidth()));
+        BufferedImage detail = resize(image, DETAIL_WIDTH, height);
+        byte[] grays = new byte[DETAIL_WIDTH * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < DETAIL_WIDTH; x++) grays[y * DETAIL_WIDTH + x] = (byte) gray(detail.getRGB(x, y));
+        }
+        return new Fingerprint(hash, height, grays);
+    }
+
+    private static int gray(int rgb) {
+        return (((rgb >> 16) & 0xff) * 299 + ((rgb >> 8) & 0xff) * 587 + (rgb & 0xff) * 114) / 1000;
+    }
+
+    // DCT-II 2D separável (linhas, depois colunas)
+    private static double[][] dct(double[][] input) {
+        int n = input.length;
+        double[][] cos = new double[n][n];
+        for (int k = 0; k < n; k++) {
+            for (int i = 0; i < n; i++) cos[k][i] = Math.cos((2 * i + 1) * k * Math.PI / (2 * n));
+        }
+        double[][] rows = new double[n][n];
+        for (int y = 0; y < n; y++) {
+            for (int k = 0; k < n; k++) {
+                double sum = 0;
+                for (int i = 0; i < n; i++) sum += input[y][i] * cos[k][i];
+                rows[y][k] = sum;
+            }
+        }
+        double[][] out = new double[n][n];
+        for (int x = 0; x < n; x++) {
+            for (int k = 0; k < n; k++) {
+                double sum = 0;
+                for (int i = 0; i < n; i++) sum += rows[i][x] * cos[k][i];
+                out[k][x] = sum;
+            }
+        }
+        return out;
+    }
+}
@@ -1,137 +1,317 @@
 package com.barberbot.api.service;
 
-import com.barberbot.api.model.Customer;
+import com.barberbot.api.model.ScheduledTask;
+import com.barberbot.api.repository.ScheduledTaskRepository;
+import com.barberbot.api.scheduler.BarberBotScheduler;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
 
+/**
+ * Agenda lida da foto do Luiz. Cada corte vira uma linha REMINDER em scheduled_tasks (o lembrete 1h antes),
+ * disparada pelo {@link BarberBotScheduler}: um deploy no meio do dia não perde nada.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 @SuppressWarnings("null")
 public class AgendaService {
 
+    public static final String TASK_TYPE = "REMINDER";
+
+    static final ZoneId ZONE = ZoneId.of("America/Sao_Paulo");
+    private static final DateTimeFormatter HORA = DateTimeFormatter.ofPattern("HH:mm");
+    private static final DateTimeFormatter DIA = DateTimeFormatter.ofPattern("dd/MM");
+    private static final DateTimeFormatter CHAVE = DateTimeFormatter.ofPattern("yyyyMMddHHmm");
+    private static final long ANTECEDENCIA_HORAS = 1;
+
+    // Mesmo telefone + mesmo horário = mesma linha. Lembrete já enviado (ou em envio) não é mexido.
+    private static final String UPSERT_SQL = """
+            INSERT INTO scheduled_tasks (id, customer_phone, execution_time, task_type, message_content, status,
+                                         dedup_key, appointment_time, customer_name, service_name, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, now(), now())
+            ON CONFLICT (dedup_key) DO UPDATE SET
+                customer_phone = EXCLUDED.customer_phone,
+                execution_time = EXCLUDED.execution_time,
+                message_content = EXCLUDED.message_content,
+                status = EXCLUDED.status,
+                customer_name = EXCLUDED.customer_name,
+                service_name = EXCLUDED.service_name,
+                updated_at = now()
+            WHERE scheduled_tasks.status IN ('PENDING', 'SKIPPED', 'CANCELLED')
+            """;
+
     private final CustomerService customerService;
-    private final WhatsAppService whatsAppService;
+    private final ScheduledTaskRepository taskRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final BarberBotScheduler scheduler;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    
-    // Objeto Interno para guardar as informações exatas do agendamento
-    @Data
-    public static class Agendamento {
-        private String name;
-        private String phone;
-        private String time;
-        private String date;
-        private String service;
-        private boolean notified; // Trava para não mandar duas vezes
-    }
 
-    // A memória do robô para os cortes de hoje/amanhã
-    private static final List<Agendamento> agendaAtiva = new ArrayList<>();
-    private static final List<String> agendaDisplay = new ArrayList<>(); 
+    // Um corte lido da foto, já com data/hora absoluta
+    private record Agendamento(String dedupKey, String name, String phone, String service,
+                               ZonedDateTime when, String message, ScheduledTask.TaskStatus status) {}
+
+    /**
+     * Resultado da leitura: quantos lembretes ficaram programados e os nomes que o Luiz precisa conferir.
+     */
+    public record ResultadoAgenda(int agendados, List<String> ambiguos) {}
+
+    // Linha da foto já com data/hora, antes de procurar o cliente
+    private record Lido(String name, String service, ZonedDateTime when) {}
 
-    public int processAgenda(String jsonAgenda) {
-        int agendados = 0;
-        agendaAtiva.clear();
-        agendaDisplay.clear();
+    /**
+     * Lê a agenda e grava (upsert em lote) um lembrete {@value #ANTECEDENCIA_HORAS}h antes de cada corte.
+     * Os nomes são resolvidos todos de uma vez no índice em memória (aproximado: "Adilson M.", sem acento);
+     * nome ambíguo fica sem lembrete e volta no resultado para o Luiz conferir.
+     * Reenviar a mesma foto não duplica nada; cortes que sumiram da nova foto do mesmo dia são cancelados.
+     */
+    @Transactional
+    public ResultadoAgenda processAgenda(String jsonAgenda) {
+        List<Lido> lidos = new ArrayList<>();
+        ZonedDateTime now = ZonedDateTime.now(ZONE);
 
         try {
             JsonNode root = objectMapper.readTree(jsonAgenda);
-            JsonNode items = root.get("items");
+            JsonNode nodes = root.get("items");
 
-            if (items != null && items.isArray()) {
-                for (JsonNode item : items) {
+            if (nodes != null && nodes.isArray()) {
+                for (JsonNode item : nodes) {
                     String name = item.has("name") ? item.get("name").asText() : "";
                     String time = item.has("time") ? item.get("time").asText() : "";
                     String date = item.has("date") ? item.get("date").asText() : "Hoje";
                     String service = item.has("service") ? item.get("service").asText() : "Corte";
 
-                    if (!name.isEmpty() && !time.isEmpty()) {
-                        // Faz o Match com o CSV
-                        Customer customer = customerService.findByName(name);
-                        String phone = (customer != null) ? customer.getPhoneNumber() : null;
-                        String phoneStatus = (phone != null) ? " (✅ Cadastrado)" : " (⚠️ Sem telefone na base)";
-                        
-                        // Guarda o agendamento estruturado
-                        Agendamento ag = new Agendamento();
-                        ag.setName(name);
-                        ag.setPhone(phone);
-                        ag.setTime(time);
-                        ag.setDate(date);
-                        ag.setService(service);
-                        ag.setNotified(false); // Nasce como NÃO avisado
-                        
-                        agendaAtiva.add(ag);
-                        agendaDisplay.add("📅 " + date + " às ⏰ " + time + " - " + name + " | " + service + phoneStatus);
-                        
-                        if (phone != null) agendados++;
-                    }
+                    if (name.isEmpty() || time.isEmpty()) continue;
+                    ZonedDateTime when = parseWhen(date, time, now);
+                    if (when == null) continue; // Sem data/hora não tem lembrete nem lugar na agenda
+                    lidos.add(new Lido(name, service, when));
                 }
             }
-            log.info("Agenda processada. {} clientes válidos para notificação.", agendados);
-            return agendados;
         } catch (Exception e) {
             log.error("Erro Agenda JSON: {}", e.getMessage());
             throw new RuntimeException("Falha na agenda", e);
         }
+
+        // Faz o Match com o CSV: a agenda inteira numa passada
+        List<CustomerNameIndex.Match> matches = customerService.resolveNames(lidos.stream().map(Lido::name).toList());
+        List<Agendamento> items = new ArrayList<>(lidos.size());
+        List<String> ambiguos = new ArrayList<>();
+        for (int i = 0; i < lidos.size(); i++) {
+            Lido lido = lidos.get(i);
+            CustomerNameIndex.Match match = matches.get(i);
+            if (match.ambiguous()) {
+                ambiguos.add(lido.name() + " (" + lido.when().format(HORA) + "): " + String.join(" ou ", match.alternatives()) + "?");
+            } else if (match.found() && !lido.name().equalsIgnoreCase(match.customer().getName())) {
+                log.info("[AGENDA] '{}' → '{}' (confiança {})", lido.name(), match.customer().getName(),
+                        String.format("%.2f", match.confidence()));
+            }
+            String phone = match.found() ? PhoneNumbers.e164(match.customer().getPhoneNumber()) : null;
+            items.add(toAgendamento(lido.name(), phone, lido.service(), lido.when(), now));
+        }
+
+        save(items);
+
+        int agendados = (int) items.stream().filter(a -> a.status() == ScheduledTask.TaskStatus.PENDING).count();
+        items.stream()
+                .filter(a -> a.status() == ScheduledTask.TaskStatus.PENDING)
+                .map(a -> toLocal(a.when().minusHours(ANTECEDENCIA_HORAS)))
+                .min(LocalDateTime::compareTo)
+                .ifPresent(this::wakeAfterCommit);
+        log.info("Agenda processada. {} clientes válidos para notificação, {} nomes ambíguos.", agendados, ambiguos.size());
+        return new ResultadoAgenda(agendados, ambiguos);
+    }
+
+    // O despertar só pode disparar depois do commit: antes disso o claim não enxerga as linhas novas
+    private void wakeAfterCommit(LocalDateTime at) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    scheduler.wakeAt(at);
+                }
+            });
+        } else {
+            scheduler.wakeAt(at);
+        }
     }
-    
+
+    /**
+     * Cortes de hoje e amanhã, direto do banco.
+     */
     public String getAgendaSalva() {
-        if (agendaDisplay.isEmpty()) return "Nenhum agendamento lido. Me mande a foto da agenda primeiro!";
-        return String.join("\n", agendaDisplay);
+        LocalDate today = LocalDate.now(ZONE);
+        List<ScheduledTask> tasks = taskRepository.findAgenda(TASK_TYPE,
+                toLocal(today.atStartOfDay(ZONE)), toLocal(today.plusDays(2).atStartOfDay(ZONE)));
+        if (tasks.isEmpty()) return "Nenhum agendamento lido. Me mande a foto da agenda primeiro!";
+
+        List<String> display = new ArrayList<>(tasks.size());
+        for (ScheduledTask task : tasks) {
+            ZonedDateTime when = fromLocal(task.getAppointmentTime());
+            String phoneStatus = task.getCustomerPhone().isEmpty() ? " (⚠️ Sem telefone na base)" : " (✅ Cadastrado)";
+            display.add("📅 " + when.format(DIA) + " às ⏰ " + when.format(HORA) + " - " + task.getCustomerName()
+                    + " | " + task.getServiceName() + phoneStatus);
+        }
+        return String.join("\n", display);
     }
 
-    // ==============================================================
-    // A MÁGICA: RODA A CADA 1 MINUTO OLHANDO O RELÓGIO
-    // ==============================================================
-    @Scheduled(cron = "0 * * * * *", zone = "America/Sao_Paulo")
-    public void dispararLembretes1HoraAntes() {
-        if (agendaAtiva.isEmpty()) return;
-
-        LocalTime now = LocalTime.now(ZoneId.of("America/Sao_Paulo"));
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-
-        for (Agendamento appt : agendaAtiva) {
-            // Se já avisou ou se não achou o telefone no CSV, ignora
-            if (appt.isNotified() || appt.getPhone() == null) continue;
-
-            try {
-                // Limpa o horário caso a IA mande "09h00" ou "9:00"
-                String cleanTime = appt.getTime().trim().replace("h", ":").replace(" ", "");
-                if (cleanTime.length() == 4 && cleanTime.charAt(1) == ':') cleanTime = "0" + cleanTime;
-                
-                LocalTime apptTime = LocalTime.parse(cleanTime, formatter);
-                
-                // Calcula a diferença em minutos de agora até o horário do corte
-                long minutesUntil = ChronoUnit.MINUTES.between(now, apptTime);
-                
-                // Se faltar exatamente entre 59 e 61 minutos (1 hora)
-                if (minutesUntil <= 61 && minutesUntil >= 59) {
-                    // Pega só o primeiro nome do cliente (Ex: "Adilson Martins" vira "Adilson")
-                    String primeiroNome = appt.getName().split(" ")[0];
-                    
-                    String msg = String.format("Fala, %s! 💈\n\nPassando pra te lembrar do nosso horário agendado para daqui a pouco, às *%s* (%s).\n\nTe esperamos lá na LH Barbearia! ✂️🔥", 
-                        primeiroNome, appt.getTime(), appt.getService());
-                    
-                    whatsAppService.sendTextMessage(appt.getPhone(), msg);
-                    appt.setNotified(true); // Trava para não mandar de novo no próximo minuto
-                    
-                    log.info("[AGENDA] Lembrete de 1H enviado com sucesso para {} às {}", appt.getName(), appt.getTime());
-                }
-            } catch (Exception e) {
-                log.error("[AGENDA-ERRO] Erro ao calcular horário para {}: {}", appt.getName(), e.getMessage());
+    private Agendamento toAgendamento(String name, String phone, String service, ZonedDateTime when, ZonedDateTime now) {
+        // Sem telefone a chave é o nome: a linha existe só para aparecer na agenda
+        String who = phone != null ? String.valueOf(PhoneNumbers.canonical(phone)) : TextNormalizer.normalize(name);
+        if (who.length() > 60) who = who.substring(0, 60);
+        String dedupKey = TASK_TYPE + ":" + who + ":" + when.format(CHAVE);
+
+        boolean canRemind = phone != null && when.isAfter(now);
+        String message = canRemind ? mensagem(name, service, when) : null;
+        return new Agendamento(dedupKey, name, phone, service, when, message,
+                canRemind ? ScheduledTask.TaskStatus.PENDING : ScheduledTask.TaskStatus.SKIPPED);
+    }
+
+    private void save(List<Agendamento> items) {
+        if (items.isEmpty()) return;
+        jdbcTemplate.batchUpdate(UPSERT_SQL, items, items.size(), (ps, a) -> {
+            ps.setObject(1, UUID.randomUUID());
+            ps.setString(2, a.phone() != null ? a.phone() : "");
+            ps.setTimestamp(3, Timestamp.valueOf(toLocal(a.when().minusHours(ANTECEDENCIA_HORAS))));
+            ps.setString(4, TASK_TYPE);
+            ps.setString(5, a.message());
+            ps.setString(6, a.status().name());
+            ps.setString(7, a.dedupKey());
+            ps.setTimestamp(8, Timestamp.valueOf(toLocal(a.when())));
+            ps.setString(9, a.name());
+            ps.setString(10, a.service());
+        });
+
+        // A foto é a agenda inteira do dia: o que não veio nela foi desmarcado
+        Map<LocalDate, Set<String>> keysByDay = new TreeMap<>();
+        for (Agendamento a : items) {
+            keysByDay.computeIfAbsent(a.when().toLocalDate(), d -> new HashSet<>()).add(a.dedupKey());
+        }
+        keysByDay.forEach((day, keys) -> {
+            int cancelled = taskRepository.cancelMissing(TASK_TYPE,
+                    toLocal(day.atStartOfDay(ZONE)), toLocal(day.plusDays(1).atStartOfDay(ZONE)), keys);
+            if (cancelled > 0) log.info("[AGENDA] {} lembretes de {} cancelados (fora da nova foto).", cancelled, day.format(DIA));
+        });
+    }
+
+    private static String mensagem(String name, String service, ZonedDateTime when) {
+        // Pega só o primeiro nome do cliente (Ex: "Adilson Martins" vira "Adilson")
+        String primeiroNome = name.split(" ")[0];
+        return String.format("Fala, %s! 💈\n\nPassando pra te lembrar do nosso horário agendado para daqui a pouco, às *%s* (%s).\n\nTe esperamos lá na LH Barbearia! ✂️🔥", 
+            primeiroNome, when.format(HORA), service);
+    }
+
+    // scheduled_tasks guarda hora local do servidor (como o LocalDateTime.now() do disparador)
+    private static LocalDateTime toLocal(ZonedDateTime when) {
+        return when.withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+    }
+
+    private static ZonedDateTime fromLocal(LocalDateTime local) {
+        return local.atZone(ZoneId.systemDefault()).withZoneSameInstant(ZONE);
+    }
+
+    /**
+     * Converte a data e a hora que a IA leu da foto num instante absoluto, uma vez só.
+     * Data: "Hoje", "Amanhã", "Sexta", "26/02" ou "26/02/2026" (sem ano, uma data muito no passado é do ano que vem).
+     * Hora: "14:30", "9:00", "09h00", "9h". Devolve null se não der pra entender.
+     */
+    static ZonedDateTime parseWhen(String date, String time, ZonedDateTime now) {
+        LocalTime hora = parseTime(time);
+        LocalDate dia = parseDate(date, now.toLocalDate());
+        if (hora == null || dia == null) {
+            log.warn("[AGENDA] Data/hora não entendida: '{}' '{}'", date, time);
+            return null;
+        }
+        return ZonedDateTime.of(dia, hora, ZONE);
+    }
+
+    private static LocalTime parseTime(String time) {
+        int[] parts = numbers(time);
+        if (parts.length == 0 || parts.length > 2) return null;
+        try {
+            return LocalTime.of(parts[0], parts.length > 1 ? parts[1] : 0);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static LocalDate parseDate(String date, LocalDate today) {
+        String normalized = TextNormalizer.normalize(date);
+        if (normalized.isEmpty() || normalized.equals("hoje")) return today;
+        if (normalized.equals("amanha")) return today.plusDays(1);
+        DayOfWeek weekday = weekday(normalized);
+        if (weekday != null) return today.with(TemporalAdjusters.nextOrSame(weekday));
+
+        int[] parts = numbers(date);
+        if (parts.length < 2 || parts.length > 3) return null;
+        try {
+            if (parts.length == 3) {
+                int year = parts[2] < 100 ? 2000 + parts[2] : parts[2];
+                return LocalDate.of(year, parts[1], parts[0]);
+            }
+            LocalDate day = LocalDate.of(today.getYear(), parts[1], parts[0]);
+            // Agenda de dezembro lida com datas de janeiro
+            return day.isBefore(today.minusMonths(6)) ? day.plusYears(1) : day;
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static DayOfWeek weekday(String normalized) {
+        String first = normalized.split(" ")[0];
+        return switch (first) {
+            case "segunda" -> DayOfWeek.MONDAY;
+            case "terca" -> DayOfWeek.TUESDAY;
+            case "quarta" -> DayOfWeek.WEDNESDAY;
+            case "quinta" -> DayOfWeek.THURSDAY;
+            case "sexta" -> DayOfWeek.FRIDAY;
+            case "sabado" -> DayOfWeek.SATURDAY;
+            case "domingo" -> DayOfWeek.SUNDAY;
+            default -> null;
+        };
+    }
+
+    /**
+     * Grupos de dígitos do texto ("09h00" → [9, 0], "26/02/2026" → [26, 2, 2026]).
+     */
+    private static int[] numbers(String text) {
+        if (text == null) return new int[0];
+        List<Integer> values = new ArrayList<>(3);
+        int value = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 9999) return new int[0];
+            } else if (value >= 0) {
+                values.add(value);
+                value = -1;
             }
         }
+        if (value >= 0) values.add(value);
+        return values.stream().mapToInt(Integer::intValue).toArray();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,368 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.client.SendPriority;
+import com.barberbot.api.config.BarberBotProperties;
+import com.barberbot.api.model.Campaign;
+import com.barberbot.api.model.Campaign.CampaignStatus;
+import com.barberbot.api.repository.CampaignRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Disparos em massa (avisos e prospecção) como campanhas retomáveis.
+ * <p>
+ * A campanha fica na tabela campaigns com um cursor: os clientes são lidos em páginas por id (keyset),
+ * cada página vai para o {@link WhatsAppService} com prioridade de disparo (o ritmo é do limitador de envios).
+ * Os resultados são contados na ordem dos clientes, e cursor e contadores são salvos a cada poucos envios
+ * concluídos e no fim da página: uma queda repete no máximo os envios ainda em andamento. Pausa, retomada e
+ * cancelamento valem a partir do próximo cliente; depois de um restart as campanhas em andamento continuam
+ * do cursor. Nada roda na thread do webhook.
+ */
+@Slf4j
+@Service
+public class CampaignService {
+
+    private static final List<CampaignStatus> ACTIVE = List.of(CampaignStatus.RUNNING, CampaignStatus.PAUSED);
+    private static final Duration RETRY_AFTER_ERROR = Duration.ofSeconds(30);
+
+    private record Target(UUID id, String phone) {}
+
+    private enum Outcome { SENT, FAILED, SKIPPED }
+
+    private record Result(UUID id, Outcome outcome) {}
+
+    // Campanha rodando neste processo
+    private static final class Run {
+        private final UUID id;
+        private final String adminPhone;
+        private final String text;
+        private final int total;
+        private final AtomicInteger sent;
+        private final AtomicInteger failed;
+        private final int processedAtStart;
+        private final long startedAt = System.nanoTime();
+        private volatile CampaignStatus status = CampaignStatus.RUNNING;
+        private volatile UUID cursor;
+        private volatile long lastReport = System.nanoTime();
+        private int checkpointed;
+        private long lastCheckpoint = System.nanoTime();
+
+        Run(Campaign campaign) {
+            this.id = campaign.getId();
+            this.adminPhone = campaign.getAdminPhone();
+            this.text = (campaign.isProspecting() ? "💈 *LH Barbearia* 💈\n\n" : "📢 *Aviso LH Barbearia*\n\n") + campaign.getMessage();
+            this.total = campaign.getTotal();
+            this.sent = new AtomicInteger(campaign.getSent());
+            this.failed = new AtomicInteger(campaign.getFailed());
+            this.processedAtStart = campaign.getSent() + campaign.getFailed();
+            this.checkpointed = processedAtStart;
+            this.cursor = campaign.getCursorId();
+        }
+
+        int processed() {
+            return sent.get() + failed.get();
+        }
+    }
+
+    private final CampaignRepository campaignRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final WhatsAppService whatsAppService;
+    private final BarberBotProperties.Campaign config;
+    private final Map<UUID, Run> runs = new ConcurrentHashMap<>();
+    // Comandos do admin e fim de página, um por vez. Fazem I/O (banco, Evolution) e podem rodar em virtual
+    // thread: lock em vez de synchronized para não prender a thread do SO
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public CampaignService(CampaignRepository campaignRepository, JdbcTemplate jdbcTemplate,
+                           WhatsAppService whatsAppService, BarberBotProperties properties) {
+        this.campaignRepository = campaignRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.whatsAppService = whatsAppService;
+        this.config = properties.getCampaign();
+    }
+
+    /**
+     * Cria e inicia uma campanha para toda a base. Só uma campanha ativa (rodando ou pausada) por vez.
+     */
+    public void start(String adminPhone, String message, boolean prospecting) {
+        lock.lock();
+        try {
+            Campaign active = campaignRepository.findFirstByStatusInOrderByCreatedAtDesc(ACTIVE).orElse(null);
+            if (active != null) {
+                whatsAppService.sendTextMessage(adminPhone, "⚠️ Já existe uma campanha " + label(active.getStatus()) +
+                        " (" + progress(active.getSent(), active.getFailed(), active.getTotal()) + ").\n" +
+                        "Digite *cancelar campanha* antes de iniciar outra.");
+                return;
+            }
+            Integer total = jdbcTemplate.queryForObject("SELECT count(*) FROM customers", Integer.class);
+            Campaign campaign = campaignRepository.save(Campaign.builder()
+                    .adminPhone(PhoneNumbers.digits(adminPhone))
+                    .message(message)
+                    .prospecting(prospecting)
+                    .status(CampaignStatus.RUNNING)
+                    .total(total != null ? total : 0)
+                    .build());
+            whatsAppService.sendTextMessage(adminPhone, "🚀 Iniciando disparo para " + campaign.getTotal() + " contatos...\n" +
+                    "Digite *9* para ver o andamento, pausar ou cancelar.");
+            launch(campaign);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void pause(String adminPhone) {
+        lock.lock();
+        try {
+            Run run = activeRun();
+            if (run == null || run.status != CampaignStatus.RUNNING) {
+                whatsAppService.sendTextMessage(adminPhone, "Nenhuma campanha rodando no momento.");
+                return;
+            }
+            run.status = CampaignStatus.PAUSED; // o executor grava ao terminar os envios em andamento
+            whatsAppService.sendTextMessage(adminPhone, "⏸️ Campanha pausada em " + progress(run) + ".\nDigite *retomar campanha* para continuar.");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void resume(String adminPhone) {
+        lock.lock();
+        try {
+            Run run = activeRun();
+            if (run != null) {
+                run.status = CampaignStatus.RUNNING; // ainda não tinha parado: segue do ponto em que está
+                whatsAppService.sendTextMessage(adminPhone, "▶️ Campanha retomada (" + progress(run) + ").");
+                return;
+            }
+            Campaign paused = campaignRepository.findFirstByStatusInOrderByCreatedAtDesc(List.of(CampaignStatus.PAUSED)).orElse(null);
+            if (paused == null) {
+                whatsAppService.sendTextMessage(adminPhone, "Nenhuma campanha pausada.");
+                return;
+            }
+            paused.setStatus(CampaignStatus.RUNNING);
+            campaignRepository.save(paused);
+            whatsAppService.sendTextMessage(adminPhone, "▶️ Campanha retomada (" +
+                    progress(paused.getSent(), paused.getFailed(), paused.getTotal()) + ").");
+            launch(paused);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void cancel(String adminPhone) {
+        lock.lock();
+        try {
+            Run run = activeRun();
+            if (run != null) {
+                run.status = CampaignStatus.CANCELLED; // o executor grava e avisa o resultado final
+                whatsAppService.sendTextMessage(adminPhone, "⏹️ Cancelando a campanha...");
+                return;
+            }
+            Campaign paused = campaignRepository.findFirstByStatusInOrderByCreatedAtDesc(ACTIVE).orElse(null);
+            if (paused == null) {
+                whatsAppService.sendTextMessage(adminPhone, "Nenhuma campanha ativa para cancelar.");
+                return;
+            }
+            paused.setStatus(CampaignStatus.CANCELLED);
+            paused.setFinishedAt(LocalDateTime.now());
+            campaignRepository.save(paused);
+            whatsAppService.sendTextMessage(adminPhone, "⏹️ Campanha cancelada. Alcançou " + paused.getSent() + " contatos.");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void status(String adminPhone) {
+        Run run = activeRun();
+        if (run != null) {
+            whatsAppService.sendTextMessage(adminPhone, report(run) +
+                    "\n\nDigite *pausar campanha*, *retomar campanha* ou *cancelar campanha*.");
+            return;
+        }
+        Campaign last = campaignRepository.findFirstByStatusInOrderByCreatedAtDesc(ACTIVE).orElse(null);
+        if (last == null) {
+            whatsAppService.sendTextMessage(adminPhone, "📊 Nenhuma campanha ativa. Use *2* ou *3* para iniciar um disparo.");
+            return;
+        }
+        whatsAppService.sendTextMessage(adminPhone, "📊 Campanha " + label(last.getStatus()) + ": " +
+                progress(last.getSent(), last.getFailed(), last.getTotal()) + "\n\nDigite *retomar campanha* ou *cancelar campanha*.");
+    }
+
+    /**
+     * Campanhas que estavam rodando quando a aplicação caiu continuam do cursor salvo.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeAfterRestart() {
+        for (Campaign campaign : campaignRepository.findByStatus(CampaignStatus.RUNNING)) {
+            log.info("[CAMPANHA] Retomando campanha {} após restart ({}/{})", campaign.getId(),
+                    campaign.getSent() + campaign.getFailed(), campaign.getTotal());
+            launch(campaign);
+        }
+    }
+
+    private void launch(Campaign campaign) {
+        Run run = new Run(campaign);
+        if (runs.putIfAbsent(run.id, run) != null) return;
+        nextPage(run);
+    }
+
+    private void nextPage(Run run) {
+        Mono.fromCallable(() -> loadPage(run.cursor))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(page -> {
+                    if (page.isEmpty()) return Mono.just(true);
+                    // Envios em paralelo, resultados na ordem dos ids: o cursor só passa de quem já terminou
+                    return Flux.fromIterable(page)
+                            .takeWhile(target -> run.status == CampaignStatus.RUNNING)
+                            .flatMapSequential(target -> send(run, target), config.getConcurrency())
+                            .publishOn(Schedulers.boundedElastic())
+                            .doOnNext(result -> {
+                                run.cursor = result.id();
+                                if (result.outcome() == Outcome.SENT) run.sent.incrementAndGet();
+                                else if (result.outcome() == Outcome.FAILED) run.failed.incrementAndGet();
+                                checkpoint(run);
+                            })
+                            // Fim só se a última página foi até o fim: uma pausa no meio (já retomada) não conta
+                            .then(Mono.fromSupplier(() -> page.size() < config.getPageSize()
+                                    && page.get(page.size() - 1).id().equals(run.cursor)));
+                })
+                .publishOn(Schedulers.boundedElastic())
+                .subscribe(finished -> afterPage(run, finished), e -> {
+                    log.error("[CAMPANHA] Erro na campanha {}: {}. Tentando de novo em {} s",
+                            run.id, e.getMessage(), RETRY_AFTER_ERROR.toSeconds());
+                    Mono.delay(RETRY_AFTER_ERROR).subscribe(t -> nextPage(run));
+                });
+    }
+
+    private Mono<Result> send(Run run, Target target) {
+        if (PhoneNumbers.same(target.phone(), run.adminPhone)) return Mono.just(new Result(target.id(), Outcome.SKIPPED));
+        Result sent = new Result(target.id(), Outcome.SENT);
+        return whatsAppService.sendTextMessage(target.phone(), run.text, SendPriority.BROADCAST)
+                .map(response -> sent)
+                .defaultIfEmpty(sent)
+                .onErrorResume(e -> Mono.just(new Result(target.id(), Outcome.FAILED)));
+    }
+
+    // Salva o progresso no meio da página; roda na sequência dos resultados, antes do afterPage
+    private void checkpoint(Run run) {
+        long interval = Duration.ofSeconds(config.getCheckpointSeconds()).toNanos();
+        if (run.processed() - run.checkpointed < config.getCheckpointEvery() && System.nanoTime() - run.lastCheckpoint < interval) return;
+        try {
+            campaignRepository.checkpoint(run.id, run.cursor, run.sent.get(), run.failed.get());
+            run.checkpointed = run.processed();
+            run.lastCheckpoint = System.nanoTime();
+        } catch (Exception e) {
+            log.warn("[CAMPANHA] Falha salvando o progresso da campanha {}: {}", run.id, e.getMessage());
+        }
+    }
+
+    // Grava o cursor e decide: próxima página, parada (pausa/cancelamento) ou fim
+    private void afterPage(Run run, boolean finished) {
+        lock.lock();
+        try {
+            CampaignStatus status = run.status;
+            if (finished && status == CampaignStatus.RUNNING) status = CampaignStatus.COMPLETED;
+            save(run, status);
+            if (status == CampaignStatus.RUNNING) {
+                nextPage(run);
+                return;
+            }
+            runs.remove(run.id);
+            switch (status) {
+                case COMPLETED -> whatsAppService.sendTextMessage(run.adminPhone, "✅ Disparo finalizado! Alcançou " + run.sent.get() +
+                        " contatos." + (run.failed.get() > 0 ? " (" + run.failed.get() + " falhas)" : ""));
+                case CANCELLED -> whatsAppService.sendTextMessage(run.adminPhone, "⏹️ Campanha cancelada. Alcançou " + run.sent.get() + " contatos.");
+                default -> log.info("[CAMPANHA] Campanha {} pausada em {}", run.id, progress(run));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void save(Run run, CampaignStatus status) {
+        campaignRepository.findById(run.id).ifPresent(campaign -> {
+            campaign.setCursorId(run.cursor);
+            campaign.setSent(run.sent.get());
+            campaign.setFailed(run.failed.get());
+            campaign.setStatus(status);
+            if (status == CampaignStatus.COMPLETED || status == CampaignStatus.CANCELLED) campaign.setFinishedAt(LocalDateTime.now());
+            campaignRepository.save(campaign);
+        });
+    }
+
+    // Próxima página depois do cursor, em ordem de id (usa a chave primária, sem OFFSET)
+    private List<Target> loadPage(UUID cursor) {
+        if (cursor == null) {
+            return jdbcTemplate.query("SELECT id, phone_number FROM customers ORDER BY id LIMIT ?",
+                    (rs, i) -> new Target(rs.getObject(1, UUID.class), rs.getString(2)), config.getPageSize());
+        }
+        return jdbcTemplate.query("SELECT id, phone_number FROM customers WHERE id > ? ORDER BY id LIMIT ?",
+                (rs, i) -> new Target(rs.getObject(1, UUID.class), rs.getString(2)), cursor, config.getPageSize());
+    }
+
+    /**
+     * Relatório periódico de progresso (enviados, ritmo, falhas e previsão de término).
+     */
+    @Scheduled(fixedDelay = 30_000)
+    public void reportProgress() {
+        long interval = Duration.ofSeconds(config.getProgressIntervalSeconds()).toNanos();
+        for (Run run : runs.values()) {
+            if (run.status != CampaignStatus.RUNNING || System.nanoTime() - run.lastReport < interval) continue;
+            run.lastReport = System.nanoTime();
+            whatsAppService.sendTextMessage(run.adminPhone, report(run));
+        }
+    }
+
+    private String report(Run run) {
+        double seconds = (System.nanoTime() - run.startedAt) / 1e9;
+        int done = run.processed() - run.processedAtStart;
+        double perSecond = seconds > 0 ? done / seconds : 0;
+        int remaining = Math.max(0, run.total - run.processed());
+        String eta = perSecond > 0 ? formatDuration(Duration.ofSeconds((long) (remaining / perSecond))) : "calculando...";
+        return String.format("📊 *Campanha %s*\n\n✅ Enviados: %d de %d\n❌ Falhas: %d\n⚡ Ritmo: %.1f msg/min\n⏳ Término em: %s",
+                label(run.status), run.sent.get(), run.total, run.failed.get(), perSecond * 60, eta);
+    }
+
+    private Run activeRun() {
+        return runs.values().stream().findFirst().orElse(null);
+    }
+
+    private static String progress(Run run) {
+        return progress(run.sent.get(), run.failed.get(), run.total);
+    }
+
+    private static String progress(int sent, int failed, int total) {
+        return sent + "/" + total + " enviados" + (failed > 0 ? ", " + failed + " falhas" : "");
+    }
+
+    private static String label(CampaignStatus status) {
+        return switch (status) {
+            case RUNNING -> "em andamento";
+            case PAUSED -> "pausada";
+            case CANCELLED -> "cancelada";
+            case COMPLETED -> "concluída";
+        };
+    }
+
+    private static String formatDuration(Duration duration) {
+        long hours = duration.toHours();
+        long minutes = duration.toMinutesPart();
+        return hours > 0 ? hours + "h" + String.format("%02d", minutes) + "min" : Math.max(1, minutes) + " min";
+    }
+}
@@ -0,0 +1,97 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.config.BarberBotProperties;
+import com.barberbot.api.model.Interaction;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Monta as mensagens do chat dentro de um orçamento de tokens (contados localmente, cl100k).
+ * <p>
+ * Ordem: prompt da recepcionista (sempre idêntico, para o cache de prompt da OpenAI), resumo da conversa
+ * (se houver), as falas mais recentes que couberem no orçamento e a mensagem atual. Falas que ficaram de
+ * fora e ainda não estão no resumo vão para o {@link ConversationSummarizer}, fora do caminho da resposta.
+ */
+@Component
+public class ChatContextBuilder {
+
+    // Formato do chat da OpenAI: ~4 tokens por mensagem + 3 para iniciar a resposta
+    private static final int TOKENS_PER_MESSAGE = 4;
+    private static final int REPLY_PRIMING = 3;
+
+    public record ChatContext(List<ChatMessage> messages, int promptTokens) {}
+
+    private final Encoding encoding = Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+    private final ConversationCache conversationCache;
+    private final ConversationSummarizer conversationSummarizer;
+    private final int historyBudget;
+    private final int systemTokens;
+    private final DistributionSummary promptTokens;
+
+    public ChatContextBuilder(ConversationCache conversationCache, ConversationSummarizer conversationSummarizer,
+                              BarberBotProperties properties, MeterRegistry meterRegistry) {
+        this.conversationCache = conversationCache;
+        this.conversationSummarizer = conversationSummarizer;
+        this.historyBudget = properties.getOpenai().getHistoryTokenBudget();
+        this.systemTokens = count(OpenAIService.SYSTEM_PROMPT_RECEPTIONIST) + TOKENS_PER_MESSAGE;
+        this.promptTokens = DistributionSummary.builder("barberbot.llm.prompt.tokens")
+                .description("Tokens de entrada por chamada de chat (contagem local)")
+                .baseUnit("tokens")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public ChatContext build(UUID customerId, String userMessage, List<ConversationCache.Turn> history) {
+        ConversationCache.Summary summary = customerId != null ? conversationCache.summary(customerId) : null;
+        int budget = historyBudget;
+        if (summary != null) budget -= count(summary.text()) + TOKENS_PER_MESSAGE;
+
+        // Primeira fala ainda não coberta pelo resumo
+        int firstOpen = 0;
+        if (summary != null && summary.through() != null) {
+            while (firstOpen < history.size() && !history.get(firstOpen).timestamp().isAfter(summary.through())) firstOpen++;
+        }
+
+        // Da mais nova para a mais velha, enquanto couber
+        int used = 0;
+        int firstKept = history.size();
+        while (firstKept > firstOpen) {
+            int cost = count(history.get(firstKept - 1).content()) + TOKENS_PER_MESSAGE;
+            if (used + cost > budget) break;
+            used += cost;
+            firstKept--;
+        }
+        if (firstKept > firstOpen && customerId != null) {
+            conversationSummarizer.refresh(customerId, summary, List.copyOf(history.subList(firstOpen, firstKept)));
+        }
+
+        List<ChatMessage> messages = new ArrayList<>(history.size() - firstKept + 3);
+        messages.add(SystemMessage.from(OpenAIService.SYSTEM_PROMPT_RECEPTIONIST));
+        if (summary != null) messages.add(SystemMessage.from("Resumo da conversa anterior com este cliente: " + summary.text()));
+        for (ConversationCache.Turn turn : history.subList(firstKept, history.size())) {
+            if (turn.type() == Interaction.InteractionType.USER) messages.add(UserMessage.from(turn.content()));
+            else messages.add(AiMessage.from(turn.content()));
+        }
+        messages.add(UserMessage.from(userMessage));
+
+        int total = systemTokens + (historyBudget - budget) + used + count(userMessage) + TOKENS_PER_MESSAGE + REPLY_PRIMING;
+        promptTokens.record(total);
+        return new ChatContext(messages, total);
+    }
+
+    public int count(String text) {
+        return text == null || text.isEmpty() ? 0 : encoding.countTokens(text);
+    }
+}
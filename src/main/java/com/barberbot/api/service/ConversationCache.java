@@ -0,0 +1,200 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.config.BarberBotProperties;
+import com.barberbot.api.model.Interaction;
+import com.barberbot.api.repository.CustomerRepository;
+import com.barberbot.api.repository.InteractionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Histórico recente das conversas em memória (write-through).
+ * <p>
+ * Cada cliente ativo tem um anel fixo com as últimas N falas (tipo, texto, horário), carregado do banco
+ * uma única vez e atualizado a cada mensagem salva. O contexto do LLM sai daqui, sem ir ao Postgres.
+ * Conversas somem por LRU (quantidade), por inatividade (TTL) e por um teto global de caracteres.
+ */
+@Slf4j
+@Component
+public class ConversationCache {
+
+    public record Turn(Interaction.InteractionType type, String content, LocalDateTime timestamp) {}
+
+    /** Resumo das falas até {@code through} (inclusive), gerado pelo {@link ConversationSummarizer}. */
+    public record Summary(String text, LocalDateTime through) {}
+
+    private final InteractionRepository interactionRepository;
+    private final CustomerRepository customerRepository;
+    private final int historySize;
+    private final int maxConversations;
+    private final long idleMillis;
+    private final long maxChars;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Ordem de acesso: o primeiro é o menos usado recentemente
+    private final LinkedHashMap<UUID, Ring> rings = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalChars;
+
+    public ConversationCache(InteractionRepository interactionRepository, CustomerRepository customerRepository,
+                             BarberBotProperties properties, MeterRegistry meterRegistry) {
+        this.interactionRepository = interactionRepository;
+        this.customerRepository = customerRepository;
+        BarberBotProperties.Conversation config = properties.getConversation();
+        this.historySize = config.getHistorySize();
+        this.maxConversations = config.getMaxConversations();
+        this.idleMillis = config.getIdleMinutes() * 60_000L;
+        this.maxChars = config.getMaxChars();
+        Gauge.builder("barberbot.conversation.cache.size", this, c -> c.rings.size())
+                .description("Conversas com histórico em memória")
+                .register(meterRegistry);
+        Gauge.builder("barberbot.conversation.cache.chars", this, c -> c.totalChars)
+                .description("Caracteres de histórico em memória")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Últimas falas do cliente em ordem cronológica. Na primeira vez busca no banco.
+     */
+    public List<Turn> history(UUID customerId) {
+        lock.lock();
+        try {
+            Ring ring = rings.get(customerId);
+            if (ring != null) {
+                ring.lastAccess = System.currentTimeMillis();
+                return ring.toList();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        List<Interaction> recent = interactionRepository.findRecentInteractionsByCustomerId(customerId, Pageable.ofSize(historySize));
+        Ring loaded = new Ring(historySize);
+        for (int i = recent.size() - 1; i >= 0; i--) { // vem do mais novo para o mais velho
+            Interaction interaction = recent.get(i);
+            loaded.add(new Turn(interaction.getType(), interaction.getContent(), interaction.getTimestamp()));
+        }
+        customerRepository.findById(customerId)
+                .filter(c -> c.getConversationSummary() != null)
+                .ifPresent(c -> loaded.setSummary(new Summary(c.getConversationSummary(), c.getSummaryThrough())));
+
+        lock.lock();
+        try {
+            Ring existing = rings.get(customerId);
+            if (existing != null) return existing.toList(); // outra thread carregou antes
+            rings.put(customerId, loaded);
+            totalChars += loaded.chars;
+            evict();
+            return loaded.toList();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registra uma nova fala. Se a conversa não está em memória, a próxima leitura vem do banco.
+     */
+    public void append(UUID customerId, Interaction.InteractionType type, String content, LocalDateTime timestamp) {
+        lock.lock();
+        try {
+            Ring ring = rings.get(customerId);
+            if (ring == null) return;
+            long before = ring.chars;
+            ring.add(new Turn(type, content, timestamp));
+            ring.lastAccess = System.currentTimeMillis();
+            totalChars += ring.chars - before;
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Resumo atual da conversa (null se não houver ou se a conversa não estiver em memória).
+     */
+    public Summary summary(UUID customerId) {
+        lock.lock();
+        try {
+            Ring ring = rings.get(customerId);
+            return ring != null ? ring.summary : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void updateSummary(UUID customerId, Summary summary) {
+        lock.lock();
+        try {
+            Ring ring = rings.get(customerId);
+            if (ring == null) return;
+            long before = ring.chars;
+            ring.setSummary(summary);
+            totalChars += ring.chars - before;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Chamado com o lock
+    private void evict() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<UUID, Ring>> it = rings.entrySet().iterator();
+        while (it.hasNext()) {
+            Ring eldest = it.next().getValue();
+            boolean overLimit = rings.size() > maxConversations || totalChars > maxChars;
+            if (!overLimit && now - eldest.lastAccess < idleMillis) break;
+            totalChars -= eldest.chars;
+            it.remove();
+        }
+    }
+
+    private static final class Ring {
+        private final Turn[] turns;
+        private int start;
+        private int size;
+        private long chars;
+        private long lastAccess = System.currentTimeMillis();
+        private Summary summary;
+
+        Ring(int capacity) {
+            this.turns = new Turn[capacity];
+        }
+
+        void add(Turn turn) {
+            int length = turn.content() != null ? turn.content().length() : 0;
+            if (size == turns.length) {
+                Turn dropped = turns[start];
+                chars -= dropped.content() != null ? dropped.content().length() : 0;
+                turns[start] = turn;
+                start = (start + 1) % turns.length;
+            } else {
+                turns[(start + size) % turns.length] = turn;
+                size++;
+            }
+            chars += length;
+        }
+
+        void setSummary(Summary newSummary) {
+            if (summary != null) chars -= summary.text().length();
+            summary = newSummary;
+            if (summary != null) chars += summary.text().length();
+        }
+
+        List<Turn> toList() {
+            List<Turn> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) list.add(turns[(start + i) % turns.length]);
+            return list;
+        }
+    }
+}
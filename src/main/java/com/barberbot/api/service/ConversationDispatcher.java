@@ -0,0 +1,143 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.config.BarberBotProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor dedicado do pipeline de mensagens.
+ * Trabalhos da mesma conversa (remoteJid) rodam em ordem, um de cada vez;
+ * conversas diferentes rodam em paralelo no pool. A fila total é limitada:
+ * quando cheia, {@link #dispatch} devolve false e o webhook responde 503 para a Evolution reenviar.
+ * Com barberbot.execution.mode=virtual cada trabalho roda numa virtual thread.
+ */
+@Slf4j
+@Component
+public class ConversationDispatcher {
+
+    private final ExecutorService executor;
+    private final int queueCapacity;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    // Fila de uma conversa. Existe no mapa enquanto houver trabalho pendente ou em execução.
+    private static class Lane {
+        private final ArrayDeque<Job> queue = new ArrayDeque<>();
+    }
+
+    private record Job(Runnable work, long enqueuedAt) {}
+
+    public ConversationDispatcher(BarberBotProperties properties, MeterRegistry meterRegistry) {
+        BarberBotProperties.Execution config = properties.getExecution();
+        this.queueCapacity = config.getQueueCapacity();
+        if (config.isVirtual()) {
+            // Uma virtual thread por mensagem: esperar LLM/Evolution não segura thread do SO.
+            // A ordem por conversa e o limite da fila continuam valendo.
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("conversation-", 1).factory());
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(config.getPoolSize(), r -> {
+                Thread t = new Thread(r, "conversation-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        Gauge.builder("barberbot.dispatch.queue.depth", pending, AtomicInteger::get)
+                .description("Mensagens aguardando ou em processamento no pipeline")
+                .register(meterRegistry);
+        Gauge.builder("barberbot.dispatch.conversations", lanes, Map::size)
+                .description("Conversas com trabalho pendente")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("barberbot.dispatch.wait")
+                .description("Tempo entre o webhook chegar e o processamento começar")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("barberbot.dispatch.rejected")
+                .description("Webhooks recusados com 503 por fila cheia")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Enfileira o trabalho na conversa {@code key}. Retorna false se a fila global estiver cheia.
+     */
+    public boolean dispatch(String key, Runnable work) {
+        if (pending.incrementAndGet() > queueCapacity) {
+            pending.decrementAndGet();
+            rejectedCounter.increment();
+            return false;
+        }
+        Job job = new Job(work, System.nanoTime());
+        boolean[] idle = new boolean[1];
+        lanes.compute(key, (k, lane) -> {
+            if (lane == null) {
+                lane = new Lane();
+                idle[0] = true;
+            }
+            lane.queue.add(job);
+            return lane;
+        });
+        if (idle[0]) executor.execute(() -> runNext(key));
+        return true;
+    }
+
+    // Roda UM trabalho da conversa e reagenda o próximo, para não monopolizar a thread
+    private void runNext(String key) {
+        Job job = peek(key);
+        if (job == null) return;
+        waitTimer.record(System.nanoTime() - job.enqueuedAt(), TimeUnit.NANOSECONDS);
+        try {
+            job.work().run();
+        } catch (Exception e) {
+            log.error("[DISPATCH] Erro na conversa {}: {}", key, e.getMessage(), e);
+        } finally {
+            pending.decrementAndGet();
+            if (complete(key)) executor.execute(() -> runNext(key));
+        }
+    }
+
+    // O trabalho em execução continua na cabeça da fila: assim ninguém inicia outro da mesma conversa
+    private Job peek(String key) {
+        Job[] head = new Job[1];
+        lanes.computeIfPresent(key, (k, lane) -> {
+            head[0] = lane.queue.peek();
+            return lane;
+        });
+        return head[0];
+    }
+
+    // Tira o trabalho concluído da fila; remove a conversa se esvaziou. Retorna true se ainda há trabalho.
+    private boolean complete(String key) {
+        boolean[] more = new boolean[1];
+        lanes.computeIfPresent(key, (k, lane) -> {
+            lane.queue.poll();
+            more[0] = !lane.queue.isEmpty();
+            return more[0] ? lane : null;
+        });
+        return more[0];
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("[DISPATCH] Encerrando com {} mensagens pendentes", pending.get());
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.repository.CustomerRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resumo acumulado das conversas longas. Quando falas antigas deixam de caber no orçamento de tokens,
+ * o resumo anterior + essas falas viram um novo resumo (chamada ao LLM numa thread própria, uma conversa
+ * por vez), gravado em customers.conversation_summary e no {@link ConversationCache}.
+ */
+@Slf4j
+@Component
+public class ConversationSummarizer {
+
+    private final OpenAIService openAIService;
+    private final CustomerRepository customerRepository;
+    private final ConversationCache conversationCache;
+    private final Set<UUID> inFlight = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "conversation-summarizer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ConversationSummarizer(OpenAIService openAIService, CustomerRepository customerRepository,
+                                  ConversationCache conversationCache) {
+        this.openAIService = openAIService;
+        this.customerRepository = customerRepository;
+        this.conversationCache = conversationCache;
+    }
+
+    /**
+     * Agenda a atualização do resumo com as falas {@code overflow} (ordem cronológica). Ignora se já há uma em andamento.
+     */
+    public void refresh(UUID customerId, ConversationCache.Summary previous, List<ConversationCache.Turn> overflow) {
+        if (overflow.isEmpty() || !inFlight.add(customerId)) return;
+        executor.execute(() -> {
+            try {
+                String text = openAIService.summarizeConversation(previous != null ? previous.text() : null, overflow);
+                if (text == null || text.isBlank()) return;
+                ConversationCache.Summary summary = new ConversationCache.Summary(text.trim(), overflow.get(overflow.size() - 1).timestamp());
+                customerRepository.updateConversationSummary(customerId, summary.text(), summary.through());
+                conversationCache.updateSummary(customerId, summary);
+                log.info("[RESUMO] Conversa {} resumida ({} falas)", customerId, overflow.size());
+            } catch (Exception e) {
+                log.warn("[RESUMO] Falha ao resumir conversa {}: {}", customerId, e.getMessage());
+            } finally {
+                inFlight.remove(customerId);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,219 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.model.Customer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Diretório telefone → cliente em memória.
+ * <p>
+ * O telefone vira a chave canônica de {@link PhoneNumbers#canonical} (com ou sem nono dígito dá no mesmo) e é a chave de uma tabela de endereçamento aberto
+ * com arrays primitivos (id em dois longs + nome). A busca não cria objetos nem consulta o banco.
+ * Carregado na subida e atualizado a cada cliente criado/importado, sempre depois do commit.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CustomerDirectory {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final StampedLock lock = new StampedLock();
+    private Table table = new Table(1024);
+    private int size;
+    private volatile boolean loaded;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.query("SELECT id, phone_number, name FROM customers", rs -> {
+            long key = key(rs.getString(2));
+            if (key > 0) {
+                UUID id = rs.getObject(1, UUID.class);
+                put(key, id.getMostSignificantBits(), id.getLeastSignificantBits(), rs.getString(3));
+            }
+        });
+        loaded = true;
+        log.info("[CLIENTES] Diretório carregado: {} clientes em {} ms (~{} KB de heap)",
+                size, System.currentTimeMillis() - start, estimatedBytes() / 1024);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Cliente desanexado (id, telefone, nome) ou null se o telefone não está no diretório.
+     */
+    public Customer find(String phoneNumber) {
+        long key = key(phoneNumber);
+        if (key <= 0) return null;
+        long stamp = lock.tryOptimisticRead();
+        Table t = table;
+        int slot = t.slot(key);
+        long high = slot >= 0 ? t.high[slot] : 0;
+        long low = slot >= 0 ? t.low[slot] : 0;
+        String name = slot >= 0 ? t.names[slot] : null;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                t = table;
+                slot = t.slot(key);
+                if (slot >= 0) {
+                    high = t.high[slot];
+                    low = t.low[slot];
+                    name = t.names[slot];
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (slot < 0) return null;
+        return Customer.builder().id(new UUID(high, low)).phoneNumber(phoneNumber).name(name).build();
+    }
+
+    /**
+     * Nome do cliente pelo telefone, sem consultar o banco. Null se não conhecido.
+     */
+    public String name(String phoneNumber) {
+        long key = key(phoneNumber);
+        if (key <= 0) return null;
+        long stamp = lock.tryOptimisticRead();
+        Table t = table;
+        int slot = t.slot(key);
+        String name = slot >= 0 ? t.names[slot] : null;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                t = table;
+                slot = t.slot(key);
+                name = slot >= 0 ? t.names[slot] : null;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Registra (ou atualiza) o cliente. Dentro de uma transação, só entra no diretório após o commit.
+     */
+    public void register(Customer customer) {
+        if (customer == null || customer.getId() == null) return;
+        long key = key(customer.getPhoneNumber());
+        if (key <= 0) return;
+        UUID id = customer.getId();
+        String name = customer.getName();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    put(key, id.getMostSignificantBits(), id.getLeastSignificantBits(), name);
+                }
+            });
+        } else {
+            put(key, id.getMostSignificantBits(), id.getLeastSignificantBits(), name);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    static long key(String phoneNumber) {
+        return PhoneNumbers.canonical(phoneNumber);
+    }
+
+    private void put(long key, long high, long low, String name) {
+        long stamp = lock.writeLock();
+        try {
+            if (size + 1 > table.keys.length * LOAD_FACTOR) table = table.grow();
+            Table t = table;
+            int mask = t.keys.length - 1;
+            int i = hash(key) & mask;
+            while (t.keys[i] != 0 && t.keys[i] != key) i = (i + 1) & mask;
+            if (t.keys[i] == 0) size++;
+            t.high[i] = high;
+            t.low[i] = low;
+            t.names[i] = name;
+            t.keys[i] = key;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Arrays paralelos de mesmo tamanho (potência de 2). Chave 0 = posição livre.
+    private static final class Table {
+        private final long[] keys;
+        private final long[] high;
+        private final long[] low;
+        private final String[] names;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            high = new long[capacity];
+            low = new long[capacity];
+            names = new String[capacity];
+        }
+
+        // Posição da chave ou -1
+        int slot(long key) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            for (int probes = 0; probes < keys.length; probes++) {
+                long k = keys[i];
+                if (k == key) return i;
+                if (k == 0) return -1;
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        Table grow() {
+            Table bigger = new Table(keys.length * 2);
+            int mask = bigger.keys.length - 1;
+            for (int j = 0; j < keys.length; j++) {
+                if (keys[j] == 0) continue;
+                int i = hash(keys[j]) & mask;
+                while (bigger.keys[i] != 0) i = (i + 1) & mask;
+                bigger.keys[i] = keys[j];
+                bigger.high[i] = high[j];
+                bigger.low[i] = low[j];
+                bigger.names[i] = names[j];
+            }
+            return bigger;
+        }
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    // Arrays (3 longs + 1 referência por posição) + nomes (cabeçalho + bytes LATIN1/UTF16)
+    private long estimatedBytes() {
+        long stamp = lock.readLock();
+        try {
+            long bytes = (long) table.keys.length * (8 * 3 + 4);
+            for (String name : table.names) {
+                if (name != null) bytes += 40 + name.length();
+            }
+            return bytes;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.model.Customer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Busca aproximada de clientes pelo nome, em memória (para os nomes que a IA lê da foto da agenda).
+ * <p>
+ * O nome vira tokens sem acento e em ordem ({@link TextNormalizer}), indexados por trigramas. A busca junta os
+ * candidatos que dividem trigramas com a consulta e dá a nota: similaridade de trigramas (Dice) + casamento token a token,
+ * em que uma inicial ("Adilson M.") ou um prefixo casa com o token completo. Dois candidatos quase empatados
+ * voltam como ambíguos, para o Luiz conferir, em vez de um palpite.
+ * Carregado na subida e atualizado a cada cliente criado/importado, depois do commit.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CustomerNameIndex {
+
+    /** Nota mínima para aceitar um cliente */
+    static final double MIN_CONFIDENCE = 0.75;
+    /** Diferença máxima entre o primeiro e o segundo candidato para o resultado ser ambíguo */
+    static final double AMBIGUITY_MARGIN = 0.05;
+    private static final int MAX_CANDIDATES = 32;
+    private static final String PLACEHOLDER = "cliente"; // Nome padrão de quem chegou sem nome
+    private static final Set<String> PARTICLES = Set.of("da", "de", "do", "das", "dos", "e");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<UUID, Integer> byId = new HashMap<>();
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private Entry[] entries = new Entry[1024];
+    private int size;
+    private int[] scratch = new int[1024]; // Contador de trigramas em comum por entrada (reusado sob o lock)
+    private int[] touchedScratch = new int[1024]; // Entradas com contador != 0
+
+    /**
+     * Resultado para um nome da agenda. {@code customer} é null sem candidato bom o bastante ou quando ambíguo;
+     * {@code alternatives} traz os nomes empatados.
+     */
+    public record Match(String query, Customer customer, double confidence, boolean ambiguous, List<String> alternatives) {
+        public boolean found() {
+            return customer != null;
+        }
+    }
+
+    private record Entry(UUID id, String phone, String name, String[] tokens, int grams) {}
+
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+
+    private record Candidate(int entry, double score) {}
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.query("SELECT id, phone_number, name FROM customers", rs -> {
+            put(rs.getObject(1, UUID.class), rs.getString(2), rs.getString(3));
+        });
+        int names;
+        int grams;
+        lock.lock();
+        try {
+            names = byId.size();
+            grams = postings.size();
+        } finally {
+            lock.unlock();
+        }
+        log.info("[CLIENTES] Índice de nomes carregado: {} nomes, {} trigramas em {} ms",
+                names, grams, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Registra (ou atualiza) o nome do cliente. Dentro de uma transação, só entra no índice após o commit.
+     */
+    public void register(Customer customer) {
+        if (customer == null || customer.getId() == null) return;
+        UUID id = customer.getId();
+        String phone = customer.getPhoneNumber();
+        String name = customer.getName();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    put(id, phone, name);
+                }
+            });
+        } else {
+            put(id, phone, name);
+        }
+    }
+
+    public Match resolve(String name) {
+        return resolveAll(List.of(name)).get(0);
+    }
+
+    /**
+     * Resolve todos os nomes de uma vez (uma agenda inteira), sem consultar o banco.
+     */
+    public List<Match> resolveAll(List<String> names) {
+        List<Match> matches = new ArrayList<>(names.size());
+        lock.lock(); // O contador de trigramas é compartilhado
+        try {
+            for (String name : names) matches.add(match(name));
+        } finally {
+            lock.unlock();
+        }
+        return matches;
+    }
+
+    private Match match(String query) {
+        String[] tokens = sortedTokens(query);
+        if (tokens.length == 0) return new Match(query, null, 0, false, List.of());
+        long[] grams = trigrams(tokens);
+
+        // Conta os trigramas em comum com cada entrada, só nas entradas tocadas
+        int[] counts = scratch;
+        int[] touched = touchedScratch;
+        int touchedSize = 0;
+        for (long gram : grams) {
+            Postings list = postings.get(gram);
+            if (list == null) continue;
+            for (int i = 0; i < list.size; i++) {
+                int e = list.ids[i];
+                if (counts[e]++ == 0) {
+                    if (touchedSize == touched.length) touched = touchedScratch = Arrays.copyOf(touched, touchedSize * 2);
+                    touched[touchedSize++] = e;
+                }
+            }
+        }
+
+        // Os MAX_CANDIDATES melhores por Dice (heap de mínimo, sem ordenar todos os tocados)
+        int[] topEntries = new int[MAX_CANDIDATES];
+        double[] topScores = new double[MAX_CANDIDATES];
+        int top = 0;
+        for (int i = 0; i < touchedSize; i++) {
+            int e = touched[i];
+            Entry entry = entries[e];
+            double dice = entry == null ? 0 : 2.0 * counts[e] / (grams.length + entry.grams());
+            counts[e] = 0;
+            if (entry == null) continue;
+            if (top < MAX_CANDIDATES) {
+                topEntries[top] = e;
+                topScores[top] = dice;
+                siftUp(topEntries, topScores, top++);
+            } else if (dice > topScores[0]) {
+                topEntries[0] = e;
+                topScores[0] = dice;
+                siftDown(topEntries, topScores, top);
+            }
+        }
+
+        // Nota completa (com o casamento por token) só nesses
+        List<Candidate> scored = new ArrayList<>(top);
+        for (int i = 0; i < top; i++) {
+            double score = 0.4 * topScores[i] + 0.6 * tokenScore(tokens, entries[topEntries[i]].tokens());
+            scored.add(new Candidate(topEntries[i], score));
+        }
+        scored.sort((a, b) -> Double.compare(b.score(), a.score()));
+
+        if (scored.isEmpty() || scored.get(0).score() < MIN_CONFIDENCE) {
+            double best = scored.isEmpty() ? 0 : scored.get(0).score();
+            return new Match(query, null, best, false, List.of());
+        }
+
+        Candidate best = scored.get(0);
+        List<String> alternatives = new ArrayList<>();
+        long bestPhone = PhoneNumbers.canonical(entries[best.entry()].phone());
+        for (Candidate c : scored) {
+            if (c.score() < MIN_CONFIDENCE || best.score() - c.score() > AMBIGUITY_MARGIN) break;
+            Entry entry = entries[c.entry()];
+            // Mesmo número cadastrado duas vezes não é ambiguidade
+            if (c != best && bestPhone != 0 && PhoneNumbers.canonical(entry.phone()) == bestPhone) continue;
+            alternatives.add(entry.name());
+        }
+        if (alternatives.size() > 1) return new Match(query, null, best.score(), true, alternatives);
+
+        Entry entry = entries[best.entry()];
+        Customer customer = Customer.builder().id(entry.id()).phoneNumber(entry.phone()).name(entry.name()).build();
+        return new Match(query, customer, best.score(), false, List.of());
+    }
+
+    private static void siftUp(int[] entries, double[] scores, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (scores[parent] <= scores[i]) return;
+            swap(entries, scores, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] entries, double[] scores, int size) {
+        int i = 0;
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && scores[left] < scores[smallest]) smallest = left;
+            if (right < size && scores[right] < scores[smallest]) smallest = right;
+            if (smallest == i) return;
+            swap(entries, scores, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static void swap(int[] entries, double[] scores, int a, int b) {
+        int e = entries[a];
+        entries[a] = entries[b];
+        entries[b] = e;
+        double s = scores[a];
+        scores[a] = scores[b];
+        scores[b] = s;
+    }
+
+    /**
+     * Média, por token da consulta, do melhor token do cliente: igual = 1, inicial ou prefixo = 0,9,
+     * senão a similaridade de trigramas entre os dois tokens (erro de leitura, acento trocado).
+     */
+    private static double tokenScore(String[] query, String[] candidate) {
+        double total = 0;
+        for (String q : query) {
+            double best = 0;
+            for (String c : candidate) {
+                double s;
+                if (q.equals(c)) s = 1;
+                else if (c.startsWith(q) && (q.length() == 1 || q.length() >= 3)) s = 0.9;
+                else s = tokenSimilarity(q, c);
+                if (s > best) best = s;
+            }
+            total += best;
+        }
+        return total / query.length;
+    }
+
+    private static double tokenSimilarity(String a, String b) {
+        if (a.length() < 2 || b.length() < 2) return 0;
+        long[] ga = trigrams(new String[]{a});
+        long[] gb = trigrams(new String[]{b});
+        int common = 0;
+        for (int i = 0, j = 0; i < ga.length && j < gb.length; ) {
+            if (ga[i] == gb[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (ga[i] < gb[j]) i++;
+            else j++;
+        }
+        return 2.0 * common / (ga.length + gb.length);
+    }
+
+    private void put(UUID id, String phone, String name) {
+        String[] tokens = sortedTokens(name);
+        if (tokens.length == 0 || (tokens.length == 1 && tokens[0].equals(PLACEHOLDER))) return;
+        long[] grams = trigrams(tokens);
+
+        lock.lock();
+        try {
+            // Nome trocado: a entrada antiga vira lápide (as listas de trigramas a ignoram)
+            Integer previous = byId.get(id);
+            if (previous != null) {
+                Entry old = entries[previous];
+                if (Arrays.equals(old.tokens(), tokens) && Objects.equals(old.phone(), phone)) return;
+                entries[previous] = null;
+            }
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+                scratch = new int[size * 2];
+            }
+            int e = size++;
+            entries[e] = new Entry(id, phone, name, tokens, grams.length);
+            byId.put(id, e);
+            for (long gram : grams) postings.computeIfAbsent(gram, g -> new Postings()).add(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // "Martins, Adilson" e "Adilson Martins" viram os mesmos tokens; "da", "de"... não contam
+    private static String[] sortedTokens(String name) {
+        String[] tokens = TextNormalizer.tokens(name).stream()
+                .filter(t -> !PARTICLES.contains(t))
+                .toArray(String[]::new);
+        Arrays.sort(tokens);
+        return tokens;
+    }
+
+    /**
+     * Trigramas distintos e ordenados de " tok1 tok2 " (três chars de 16 bits num long).
+     */
+    private static long[] trigrams(String[] tokens) {
+        String text = " " + String.join(" ", tokens) + " ";
+        if (text.length() < 3) return new long[0];
+        long[] grams = new long[text.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) grams[distinct++] = grams[i];
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+}
@@ -1,16 +1,21 @@
 package com.barberbot.api.service;
 
+import com.barberbot.api.dto.MediaHandle;
 import com.barberbot.api.model.Customer;
 import com.barberbot.api.repository.CustomerRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
@@ -20,37 +25,75 @@ import java.util.concurrent.ConcurrentHashMap;
 public class CustomerService {
 
     private final CustomerRepository customerRepository;
+    private final CustomerDirectory customerDirectory;
+    private final CustomerNameIndex customerNameIndex;
     
-    // Memória viva: Guarda o telefone do cliente e o horário que a pausa acaba
-    private final Map<String, LocalDateTime> pausedCustomers = new ConcurrentHashMap<>();
+    // Memória viva: Guarda o telefone do cliente (chave canônica) e o horário que a pausa acaba
+    private final Map<Long, LocalDateTime> pausedCustomers = new ConcurrentHashMap<>();
 
+    /**
+     * Resolve o cliente pelo diretório em memória; só vai ao banco para telefones novos.
+     * O cliente devolvido do diretório vem desanexado (id, telefone e nome).
+     */
     public Customer findOrCreateCustomer(String phoneNumber, String name) {
-        return customerRepository.findByPhoneNumber(phoneNumber)
-                .orElseGet(() -> customerRepository.save(Customer.builder()
+        Customer known = customerDirectory.find(phoneNumber);
+        if (known != null) return known;
+
+        Customer customer = findByPhone(phoneNumber).orElseGet(() -> {
+            try {
+                return customerRepository.save(Customer.builder()
                         .phoneNumber(phoneNumber)
                         .name(name != null ? name : "Cliente")
-                        .build()));
+                        .build());
+            } catch (DataIntegrityViolationException e) {
+                // Outra mensagem do mesmo número criou o cliente ao mesmo tempo (phone_number é UNIQUE)
+                return findByPhone(phoneNumber).orElseThrow(() -> e);
+            }
+        });
+        customerDirectory.register(customer);
+        customerNameIndex.register(customer);
+        return customer;
+    }
+
+    /**
+     * Nome do cliente pelo telefone (diretório em memória, com fallback no banco).
+     */
+    public String findNameByPhone(String phoneNumber) {
+        String name = customerDirectory.name(phoneNumber);
+        if (name != null || customerDirectory.isLoaded()) return name;
+        return findByPhone(phoneNumber).map(Customer::getName).orElse(null);
+    }
+
+    // Uma busca no índice da chave canônica: acha o cliente com ou sem o nono dígito, com ou sem DDI
+    private Optional<Customer> findByPhone(String phoneNumber) {
+        long key = PhoneNumbers.canonical(phoneNumber);
+        if (key == 0) return customerRepository.findByPhoneNumber(phoneNumber);
+        return customerRepository.findFirstByPhoneKeyOrderByCreatedAtAsc(key);
     }
     
-    public Customer findByName(String name) {
-        return customerRepository.findByNameIgnoreCase(name.trim()).orElse(null);
+    /**
+     * Nomes lidos da agenda → clientes, numa passada só pelo índice em memória (aceita "Adilson M.", sem acento...).
+     */
+    public List<CustomerNameIndex.Match> resolveNames(List<String> names) {
+        return customerNameIndex.resolveAll(names);
     }
 
     public void pauseCustomer(String phoneNumber, int minutes) {
-        pausedCustomers.put(phoneNumber, LocalDateTime.now().plusMinutes(minutes));
+        pausedCustomers.put(PhoneNumbers.canonical(phoneNumber), LocalDateTime.now().plusMinutes(minutes));
         log.info("Pausando cliente {} por {} minutos", phoneNumber, minutes);
     }
 
     public void resumeCustomer(String phoneNumber) {
-        pausedCustomers.remove(phoneNumber);
+        pausedCustomers.remove(PhoneNumbers.canonical(phoneNumber));
         log.info("Retomando cliente {}", phoneNumber);
     }
 
     public boolean isCustomerPaused(String phoneNumber) {
-        LocalDateTime unpauseTime = pausedCustomers.get(phoneNumber);
+        long key = PhoneNumbers.canonical(phoneNumber);
+        LocalDateTime unpauseTime = pausedCustomers.get(key);
         if (unpauseTime != null) {
             if (LocalDateTime.now().isAfter(unpauseTime)) {
-                pausedCustomers.remove(phoneNumber); // O tempo expirou, tira da pausa
+                pausedCustomers.remove(key); // O tempo expirou, tira da pausa
                 return false;
             }
             return true; // Ainda está pausado
@@ -62,21 +105,20 @@ public class CustomerService {
     public List<String> getPausedPhones() {
         // Primeiro limpa os que já venceram o tempo (1 hora)
         pausedCustomers.entrySet().removeIf(e -> LocalDateTime.now().isAfter(e.getValue()));
-        return new ArrayList<>(pausedCustomers.keySet());
+        List<String> phones = new ArrayList<>(pausedCustomers.size());
+        for (Long key : pausedCustomers.keySet()) phones.add(String.valueOf(key));
+        return phones;
     }
 
     @org.springframework.transaction.annotation.Transactional
-    public int importCustomersFromCsvBase64(String base64Content) {
-        try {
-            String pureBase64 = base64Content.contains(",") ? base64Content.split(",")[1] : base64Content;
-            byte[] decodedBytes = Base64.getDecoder().decode(pureBase64);
-            String csvText = new String(decodedBytes, java.nio.charset.StandardCharsets.UTF_8);
-            
-            String[] lines = csvText.split("\\r?\\n");
+    public int importCustomersFromCsv(MediaHandle csv) {
+        // Lê linha a linha direto do arquivo, sem decodificar o CSV inteiro para uma String
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(csv.openStream(), StandardCharsets.UTF_8))) {
+            reader.readLine(); // Cabeçalho
             int count = 0;
+            String line;
             
-            for (int i = 1; i < lines.length; i++) {
-                String line = lines[i];
+            while ((line = reader.readLine()) != null) {
                 if (line.trim().isEmpty()) continue;
                 
                 String[] columns = line.split("\",\"");
@@ -85,13 +127,15 @@ public class CustomerService {
                     String rawPhone = columns[4].replace("\"", "").trim();
                     
                     if (!rawPhone.isEmpty() && !rawPhone.equalsIgnoreCase("N/A")) {
-                        String cleanPhone = rawPhone.replaceAll("[^0-9]", "");
-                        if (cleanPhone.length() == 10 || cleanPhone.length() == 11) cleanPhone = "55" + cleanPhone;
+                        String cleanPhone = PhoneNumbers.e164(rawPhone);
                         
-                        Customer customer = customerRepository.findByPhoneNumber(cleanPhone).orElse(new Customer());
-                        customer.setPhoneNumber(cleanPhone);
+                        // Mesmo cliente com ou sem o nono dígito: atualiza o existente (mantém o número dele)
+                        Customer customer = findByPhone(cleanPhone).orElse(new Customer());
+                        if (customer.getPhoneNumber() == null) customer.setPhoneNumber(cleanPhone);
                         customer.setName(rawName); 
-                        customerRepository.save(customer);
+                        Customer saved = customerRepository.save(customer);
+                        customerDirectory.register(saved);
+                        customerNameIndex.register(saved);
                         count++;
                     }
                 }
@@ -0,0 +1,54 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.model.ScheduledTask;
+import com.barberbot.api.repository.ScheduledTaskRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+
+/**
+ * Dead-letter dos envios: mensagens que esgotaram as tentativas viram uma linha FAILED em scheduled_tasks
+ * (tipo {@value #TASK_TYPE}), com o texto original, para consulta ou reenvio manual.
+ */
+@Slf4j
+@Component
+public class DeadLetterStore {
+
+    public static final String TASK_TYPE = "OUTBOUND_DEAD_LETTER";
+
+    private final ScheduledTaskRepository taskRepository;
+    private final Counter deadLetterCounter;
+
+    public DeadLetterStore(ScheduledTaskRepository taskRepository, MeterRegistry meterRegistry) {
+        this.taskRepository = taskRepository;
+        this.deadLetterCounter = Counter.builder("barberbot.outbound.deadletter")
+                .description("Mensagens que esgotaram as tentativas de envio")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Grava a mensagem perdida fora da thread do WebClient (o save do JPA bloqueia).
+     */
+    public void record(String phone, String content, Throwable cause) {
+        deadLetterCounter.increment();
+        String digits = PhoneNumbers.digits(phone);
+        Mono.fromRunnable(() -> taskRepository.save(ScheduledTask.builder()
+                        .customerPhone(digits)
+                        .executionTime(LocalDateTime.now())
+                        .taskType(TASK_TYPE)
+                        .messageContent(content)
+                        .status(ScheduledTask.TaskStatus.FAILED)
+                        .build()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(
+                        ok -> {},
+                        e -> log.error("[DEAD-LETTER] Falha ao gravar mensagem perdida para {}: {}", digits, e.getMessage()),
+                        () -> log.warn("[DEAD-LETTER] Mensagem para {} não entregue ({}). Guardada como FAILED.",
+                                digits, cause == null ? "?" : cause.getMessage()));
+    }
+}
@@ -0,0 +1,182 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.config.BarberBotProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Respostas locais para as perguntas frequentes (preço, endereço, agendamento, Instagram, produtos),
+ * montadas com os textos de {@link BarberBotProperties.Menu} via {@link MenuOptions}.
+ * <p>
+ * Na subida compila um índice palavra/expressão → opção do menu (sem acento, com sinônimos e os nomes
+ * dos serviços da tabela). Cada mensagem é pontuada contra o índice; só responde quando uma opção ganha
+ * com folga. Na dúvida devolve null e a mensagem segue para o LLM.
+ */
+@Slf4j
+@Component
+public class FaqAnswerEngine {
+
+    private static final int STRONG = 2;
+    private static final int WEAK = 1;
+    private static final int MIN_SCORE = 2;
+    // Mensagens longas costumam ter mais de uma intenção ou detalhes: ficam com o LLM
+    private static final int MAX_TOKENS = 12;
+    private static final Set<String> STOPWORDS = Set.of("de", "da", "do", "e", "a", "o", "com", "para", "sem", "mes", "vip", "silver", "ilimitado");
+
+    private record Hit(String rowId, int weight) {}
+
+    private final BarberBotProperties properties;
+    private final Map<String, List<Hit>> index = new HashMap<>();
+    private final Map<String, Counter> answeredCounters = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final Counter fallthroughCounter;
+
+    public FaqAnswerEngine(BarberBotProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+
+        add(MenuOptions.ROW_ID_SERVICOS, STRONG, "preco", "precos", "valor", "valores", "quanto custa", "quanto e", "quanto fica",
+                "quanto ta", "tabela", "plano", "planos", "assinatura", "mensalidade", "servico", "servicos");
+        add(MenuOptions.ROW_ID_ENDERECO, STRONG, "endereco", "onde fica", "onde e", "onde voces ficam", "localizacao",
+                "como chego", "como chegar", "maps", "mapa", "rua", "fica onde");
+        add(MenuOptions.ROW_ID_AGENDAR, STRONG, "agendar", "agendamento", "marcar", "reservar", "vaga", "cashbarber");
+        // Sozinhos são ambíguos ("horário de funcionamento", "manda o link do insta", "tem no local?"): só somam
+        add(MenuOptions.ROW_ID_AGENDAR, WEAK, "horario", "horarios", "link");
+        add(MenuOptions.ROW_ID_ENDERECO, WEAK, "local");
+        add(MenuOptions.ROW_ID_INSTAGRAM, STRONG, "instagram", "insta", "redes sociais", "rede social", "arroba");
+        add(MenuOptions.ROW_ID_PRODUTOS, STRONG, "produto", "produtos", "pomada", "minoxidil", "oleo", "vende", "vendem");
+        add(MenuOptions.ROW_ID_SERVICOS, WEAK, "corte", "barba", "cabelo", "sobrancelha", "pigmentacao", "pezinho");
+        indexServiceNames(properties.getMenu().getServicesText());
+
+        this.fallthroughCounter = Counter.builder("barberbot.faq.fallthrough")
+                .description("Mensagens sem resposta local, enviadas ao LLM")
+                .register(meterRegistry);
+        Gauge.builder("barberbot.faq.llm.avoided.ratio", this, FaqAnswerEngine::avoidedRatio)
+                .description("Fração das mensagens respondidas sem chamar o LLM")
+                .register(meterRegistry);
+        log.info("[FAQ] Índice de respostas locais com {} termos", index.size());
+    }
+
+    /**
+     * Resposta local para a mensagem do cliente, ou null se não houver confiança suficiente.
+     */
+    public String answer(String message) {
+        List<String> rowIds = match(message);
+        if (rowIds.isEmpty()) {
+            fallthroughCounter.increment();
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String rowId : rowIds) {
+            if (sb.length() > 0) sb.append("\n\n");
+            sb.append(MenuOptions.getResponseForOption(rowId, properties));
+        }
+        answeredCounters.computeIfAbsent(rowIds.get(0), id -> Counter.builder("barberbot.faq.answered")
+                .description("Mensagens respondidas localmente, sem LLM")
+                .tag("option", id)
+                .register(meterRegistry)).increment();
+        return sb.toString();
+    }
+
+    // Opções (na ordem de resposta) que atendem a mensagem; vazio = sem confiança
+    private List<String> match(String message) {
+        String trimmed = message == null ? "" : message.trim();
+
+        // Menu de texto do cliente: 1 = serviços/produtos, 2 = agendar, 3 = endereço/Instagram
+        switch (trimmed) {
+            case "1": return List.of(MenuOptions.ROW_ID_SERVICOS, MenuOptions.ROW_ID_PRODUTOS);
+            case "2": return List.of(MenuOptions.ROW_ID_AGENDAR);
+            case "3": return List.of(MenuOptions.ROW_ID_ENDERECO, MenuOptions.ROW_ID_INSTAGRAM);
+            default: break;
+        }
+        // Clique na lista interativa (o id da linha volta como texto)
+        if (trimmed.startsWith("menu_")) {
+            String rowId = MenuOptions.resolveMenuOptionId(trimmed);
+            if (rowId != null && !MenuOptions.ROW_ID_ATENDENTE.equals(rowId)) return List.of(rowId);
+        }
+
+        List<String> tokens = TextNormalizer.tokens(trimmed);
+        if (tokens.isEmpty() || tokens.size() > MAX_TOKENS) return List.of();
+
+        Map<String, Integer> scores = new LinkedHashMap<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            score(scores, stem(tokens.get(i)));
+            if (i + 1 < tokens.size()) score(scores, stem(tokens.get(i)) + " " + stem(tokens.get(i + 1)));
+            if (i + 2 < tokens.size()) score(scores, stem(tokens.get(i)) + " " + stem(tokens.get(i + 1)) + " " + stem(tokens.get(i + 2)));
+        }
+
+        String best = null;
+        int bestScore = 0, secondScore = 0;
+        for (Map.Entry<String, Integer> e : scores.entrySet()) {
+            if (e.getValue() > bestScore) {
+                secondScore = bestScore;
+                bestScore = e.getValue();
+                best = e.getKey();
+            } else if (e.getValue() > secondScore) {
+                secondScore = e.getValue();
+            }
+        }
+        // Precisa de um termo forte e vantagem clara sobre a segunda opção
+        if (best == null || bestScore < MIN_SCORE || bestScore < 2 * secondScore) return List.of();
+        return List.of(best);
+    }
+
+    private void score(Map<String, Integer> scores, String term) {
+        List<Hit> hits = index.get(term);
+        if (hits == null) return;
+        for (Hit hit : hits) scores.merge(hit.rowId(), hit.weight(), Integer::sum);
+    }
+
+    // Nomes da tabela ("• Limpeza de pele VIP: R$ ...") viram termos fracos de serviços
+    private void indexServiceNames(String servicesText) {
+        if (servicesText == null) return;
+        for (String line : servicesText.split("\n")) {
+            String trimmed = line.trim();
+            if (!trimmed.startsWith("•")) continue;
+            int colon = trimmed.indexOf(':');
+            String name = colon > 0 ? trimmed.substring(1, colon) : trimmed.substring(1);
+            for (String token : TextNormalizer.tokens(name)) {
+                if (token.length() >= 4 && !STOPWORDS.contains(token)) putTerm(stem(token), MenuOptions.ROW_ID_SERVICOS, WEAK);
+            }
+        }
+    }
+
+    private void add(String rowId, int weight, String... terms) {
+        for (String term : terms) {
+            List<String> tokens = TextNormalizer.tokens(term);
+            List<String> stems = new ArrayList<>(tokens.size());
+            for (String token : tokens) stems.add(stem(token));
+            putTerm(String.join(" ", stems), rowId, weight);
+        }
+    }
+
+    private void putTerm(String term, String rowId, int weight) {
+        List<Hit> hits = index.computeIfAbsent(term, t -> new ArrayList<>());
+        for (Hit hit : hits) {
+            if (hit.rowId().equals(rowId)) return; // primeiro peso registrado vale
+        }
+        hits.add(new Hit(rowId, weight));
+    }
+
+    // Plural simples: "valores" → "valore", "precos" → "preco" (mesma regra no índice e na busca)
+    private static String stem(String token) {
+        return token.length() > 3 && token.endsWith("s") ? token.substring(0, token.length() - 1) : token;
+    }
+
+    private double avoidedRatio() {
+        double answered = answeredCounters.values().stream().mapToDouble(Counter::count).sum();
+        double total = answered + fallthroughCounter.count();
+        return total == 0 ? 0 : answered / total;
+    }
+}
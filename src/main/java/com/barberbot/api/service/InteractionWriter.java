@@ -0,0 +1,188 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.config.BarberBotProperties;
+import com.barberbot.api.model.Interaction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Gravação write-behind do histórico (tabela interactions).
+ * <p>
+ * As falas entram numa fila em memória e uma thread grava em lotes JDBC (batchUpdate) a cada
+ * {@code batchSize} registros ou {@code flushIntervalMs}, o que vier primeiro. A resposta vai para o
+ * WhatsApp sem esperar o banco. No desligamento a fila é esvaziada; com a fila cheia, quem chamou grava na hora.
+ * <p>
+ * Aqui vai só o conteúdo. A deduplicação não passa por esta fila: o message id já foi gravado de forma síncrona
+ * em processed_messages ({@link MessageDeduplicator#claim}) antes da mensagem ser atendida. Numa queda, as falas
+ * ainda na fila faltam no histórico, mas nenhuma mensagem é atendida duas vezes.
+ */
+@Slf4j
+@Component
+public class InteractionWriter {
+
+    private static final String INSERT_SQL = "INSERT INTO interactions (id, customer_id, type, content, timestamp, message_id) " +
+            "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT (message_id) WHERE message_id IS NOT NULL DO NOTHING";
+    private static final int MAX_ATTEMPTS = 3;
+
+    private record Row(UUID id, UUID customerId, Interaction.InteractionType type, String content,
+                       LocalDateTime timestamp, String messageId) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final BlockingQueue<Row> queue;
+    private final Thread flusher;
+    private volatile boolean running = true;
+    // Leitura: quem está enfileirando. Escrita: o desligamento, que só vira a chave quando nenhum offer está no meio;
+    // assim nenhuma fala entra na fila depois do último dreno
+    private final ReentrantReadWriteLock offerLock = new ReentrantReadWriteLock();
+
+    private final Timer flushTimer;
+    private final Counter writtenCounter;
+    private final Counter failedCounter;
+
+    public InteractionWriter(JdbcTemplate jdbcTemplate, BarberBotProperties properties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        BarberBotProperties.Interactions config = properties.getInteractions();
+        this.batchSize = config.getBatchSize();
+        this.flushIntervalMs = config.getFlushIntervalMs();
+        this.queue = new LinkedBlockingQueue<>(config.getQueueCapacity());
+
+        Gauge.builder("barberbot.interactions.queue.size", queue, BlockingQueue::size)
+                .description("Falas aguardando gravação no banco")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("barberbot.interactions.flush")
+                .description("Tempo de cada lote gravado")
+                .register(meterRegistry);
+        this.writtenCounter = Counter.builder("barberbot.interactions.written")
+                .description("Falas gravadas pelo write-behind")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("barberbot.interactions.failed")
+                .description("Falas descartadas após falhas repetidas de gravação")
+                .register(meterRegistry);
+
+        this.flusher = new Thread(this::run, "interaction-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public void enqueue(UUID customerId, Interaction.InteractionType type, String content, String messageId, LocalDateTime timestamp) {
+        Row row = new Row(UUID.randomUUID(), customerId, type, content, timestamp, messageId);
+        boolean queued;
+        offerLock.readLock().lock();
+        try {
+            queued = running && queue.offer(row);
+        } finally {
+            offerLock.readLock().unlock();
+        }
+        if (queued) return;
+        // Fila cheia ou desligando: grava direto na thread de quem chamou
+        if (running) log.warn("[HISTORICO] Fila de gravação cheia ({}). Gravando direto.", queue.size());
+        write(List.of(row));
+    }
+
+    private void run() {
+        List<Row> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Row first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) break;
+                    Row next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Row> rows) {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            long start = System.nanoTime();
+            try {
+                jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Row row = rows.get(i);
+                        ps.setObject(1, row.id());
+                        ps.setObject(2, row.customerId());
+                        ps.setString(3, row.type().name());
+                        ps.setString(4, row.content());
+                        ps.setTimestamp(5, Timestamp.valueOf(row.timestamp()));
+                        ps.setString(6, row.messageId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                });
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                writtenCounter.increment(rows.size());
+                return;
+            } catch (Exception e) {
+                log.warn("[HISTORICO] Falha gravando lote de {} falas (tentativa {}/{}): {}", rows.size(), attempt, MAX_ATTEMPTS, e.getMessage());
+                if (attempt < MAX_ATTEMPTS) {
+                    try {
+                        Thread.sleep(200L * attempt);
+                    } catch (InterruptedException ie) {
+                        // Interrompida, cada sleep seguinte falharia na hora: desiste em vez de repetir sem espera
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+        failedCounter.increment(rows.size());
+        log.error("[HISTORICO] {} falas descartadas após falhas de gravação", rows.size());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        offerLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            offerLock.writeLock().unlock();
+        }
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+        List<Row> batch = new ArrayList<>(batchSize);
+        int total = 0;
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            total += batch.size();
+            batch.clear();
+        }
+        if (total > 0) log.info("[HISTORICO] {} falas gravadas no desligamento", total);
+    }
+}
@@ -0,0 +1,343 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.client.EvolutionClient;
+import com.barberbot.api.config.BarberBotProperties;
+import com.barberbot.api.dto.MediaHandle;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Mídias das mensagens recebidas (áudio, imagem, CSV) em um cache de arquivos endereçado por conteúdo.
+ * <p>
+ * Layout: {@code sha/<sha256>} guarda os bytes decodificados e {@code id/<messageId>} aponta para o hash.
+ * Quando o webhook não traz o base64, a mídia é baixada pelo WebClient (pool de conexões da Evolution) em
+ * streaming para disco e decodificada sem passar o arquivo inteiro pelo heap. Downloads simultâneos do mesmo
+ * id viram um só; reprocessar o journal ou repetir a mensagem acha o arquivo pelo id e não baixa de novo.
+ */
+@Slf4j
+@Service
+public class MediaService {
+
+    // Folga para o JSON em volta do base64 (campos "mimetype", "fileName"...)
+    private static final long JSON_OVERHEAD_BYTES = 64 * 1024;
+
+    private final EvolutionClient evolutionClient;
+    private final ObjectMapper objectMapper;
+    private final BarberBotProperties.Media config;
+    private final Path shaDir;
+    private final Path idDir;
+    private final Path tmpDir;
+
+    private final Map<String, Mono<MediaHandle>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hitCounter;
+    private final Counter downloadCounter;
+    private final Counter errorCounter;
+    private final Counter downloadedBytes;
+
+    public MediaService(EvolutionClient evolutionClient, ObjectMapper objectMapper,
+                        BarberBotProperties properties, MeterRegistry meterRegistry) throws IOException {
+        this.evolutionClient = evolutionClient;
+        this.objectMapper = objectMapper;
+        this.config = properties.getMedia();
+        Path root = Paths.get(config.getCacheDir());
+        this.shaDir = Files.createDirectories(root.resolve("sha"));
+        this.idDir = Files.createDirectories(root.resolve("id"));
+        this.tmpDir = Files.createDirectories(root.resolve("tmp"));
+
+        this.hitCounter = fetches(meterRegistry, "hit");
+        this.downloadCounter = fetches(meterRegistry, "download");
+        this.errorCounter = fetches(meterRegistry, "error");
+        this.downloadedBytes = Counter.builder("barberbot.media.downloaded.bytes")
+                .description("Bytes de mídia baixados da Evolution")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Mídia da mensagem: do cache, ou baixada da Evolution. Vazio se não existir, passar do limite ou falhar.
+     */
+    public Mono<MediaHandle> fetch(String messageId) {
+        if (messageId == null || messageId.isBlank()) return Mono.empty();
+        return Mono.defer(() -> {
+            MediaHandle cached = cached(messageId);
+            if (cached != null) {
+                hitCounter.increment();
+                return Mono.just(cached);
+            }
+            // Quem chegar enquanto o download está em andamento espera o mesmo resultado
+            return inFlight.computeIfAbsent(messageId, id -> download(id)
+                    .doFinally(signal -> inFlight.remove(id))
+                    .cache());
+        });
+    }
+
+    /**
+     * Leva para o cache a mídia que veio inline no webhook (já decodificada pelo {@link MediaSpool}),
+     * para um reprocessamento achar o arquivo pelo id depois que o temporário for apagado.
+     */
+    public MediaHandle adopt(String messageId, MediaHandle inline) {
+        if (messageId == null || inline == null) return inline;
+        MediaHandle cached = cached(messageId);
+        if (cached != null) {
+            inline.release();
+            return cached;
+        }
+        try {
+            Path tmp = Files.createTempFile(tmpDir, "adopt-", ".bin");
+            try {
+                MessageDigest digest = sha256();
+                try (InputStream in = inline.openStream();
+                     OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp), digest)) {
+                    in.transferTo(out);
+                }
+                MediaHandle stored = store(messageId, tmp, inline.getSize(), digest);
+                inline.release();
+                return stored;
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            log.warn("[MIDIA] Não foi possível guardar a mídia {} no cache: {}", messageId, e.getMessage());
+            return inline;
+        }
+    }
+
+    private Mono<MediaHandle> download(String messageId) {
+        long maxRaw = config.getMaxBytes() * 4 / 3 + JSON_OVERHEAD_BYTES;
+        return Mono.usingWhen(
+                Mono.fromCallable(() -> Files.createTempFile(tmpDir, "raw-", ".json")).subscribeOn(Schedulers.boundedElastic()),
+                raw -> Mono.defer(() -> {
+                            AtomicLong received = new AtomicLong();
+                            Flux<DataBuffer> body = evolutionClient.fetchMediaBase64(messageId)
+                                    .handle((buffer, sink) -> {
+                                        if (received.addAndGet(buffer.readableByteCount()) > maxRaw) {
+                                            DataBufferUtils.release(buffer);
+                                            sink.error(new MediaTooLargeException(messageId, config.getMaxBytes()));
+                                        } else {
+                                            sink.next(buffer);
+                                        }
+                                    });
+                            return DataBufferUtils.write(body, raw).then(Mono.fromSupplier(received::get));
+                        })
+                        .retryWhen(Retry.backoff(2, Duration.ofMillis(500)).filter(MediaService::isRetryable))
+                        .flatMap(bytes -> Mono.fromCallable(() -> {
+                            downloadedBytes.increment(bytes);
+                            return decode(messageId, raw);
+                        }).subscribeOn(Schedulers.boundedElastic())),
+                raw -> Mono.fromRunnable(() -> deleteQuietly(raw)).subscribeOn(Schedulers.boundedElastic()))
+                .timeout(Duration.ofSeconds(config.getFetchTimeoutSeconds()))
+                .doOnNext(media -> downloadCounter.increment())
+                .onErrorResume(e -> {
+                    errorCounter.increment();
+                    log.warn("[MIDIA] Falha ao baixar a mídia {}: {}", messageId, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    // Lê o JSON baixado em streaming e grava só os bytes do campo "base64", calculando o SHA-256 no caminho
+    private MediaHandle decode(String messageId, Path raw) throws IOException {
+        Path tmp = Files.createTempFile(tmpDir, "media-", ".bin");
+        try (JsonParser parser = objectMapper.getFactory().createParser(raw.toFile())) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME && "base64".equals(parser.getCurrentName())
+                        && parser.nextToken() == JsonToken.VALUE_STRING) {
+                    MessageDigest digest = sha256();
+                    long size;
+                    try (OutputStream out = new LimitedOutputStream(
+                            new DigestOutputStream(Files.newOutputStream(tmp), digest), messageId, config.getMaxBytes())) {
+                        size = parser.readBinaryValue(Base64Variants.MIME_NO_LINEFEEDS, out);
+                    }
+                    if (size == 0) return null;
+                    return store(messageId, tmp, size, digest);
+                }
+            }
+            return null; // Evolution respondeu sem base64 (mídia expirada ou id desconhecido)
+        } finally {
+            deleteQuietly(tmp);
+        }
+    }
+
+    // Move o arquivo para sha/<hash> (se o conteúdo já existe, reaproveita) e grava o índice id/<messageId>
+    private MediaHandle store(String messageId, Path tmp, long size, MessageDigest digest) throws IOException {
+        String hash = HexFormat.of().formatHex(digest.digest());
+        Path target = shaDir.resolve(hash);
+        if (Files.exists(target)) {
+            Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+        } else {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Path index = Files.createTempFile(tmpDir, "id-", ".txt");
+        Files.writeString(index, hash, StandardCharsets.US_ASCII);
+        Files.move(index, indexFile(messageId), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return new MediaHandle(target, size, true);
+    }
+
+    private MediaHandle cached(String messageId) {
+        try {
+            Path index = indexFile(messageId);
+            if (!Files.exists(index)) return null;
+            Path content = shaDir.resolve(Files.readString(index, StandardCharsets.US_ASCII).trim());
+            if (!Files.exists(content)) return null;
+            return new MediaHandle(content, Files.size(content), true);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Ids da Evolution são alfanuméricos; qualquer outro caractere vira "_" para não escapar da pasta
+    private Path indexFile(String messageId) {
+        return idDir.resolve(messageId.replaceAll("[^A-Za-z0-9_-]", "_"));
+    }
+
+    /**
+     * Limpeza do cache: tira o que passou do TTL e, se ainda estiver acima do teto, as mídias mais antigas.
+     */
+    @Scheduled(fixedDelay = 600_000, initialDelay = 600_000)
+    public void evict() {
+        long cutoff = System.currentTimeMillis() - Duration.ofHours(config.getCacheTtlHours()).toMillis();
+        long maxBytes = config.getCacheMaxMb() * 1024 * 1024;
+        try {
+            List<Path> contents = new ArrayList<>();
+            long total = 0;
+            try (Stream<Path> files = Files.list(shaDir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                        deleteQuietly(file);
+                    } else {
+                        contents.add(file);
+                        total += Files.size(file);
+                    }
+                }
+            }
+            if (total > maxBytes) {
+                contents.sort(Comparator.comparingLong(MediaService::lastModified));
+                for (Path file : contents) {
+                    if (total <= maxBytes) break;
+                    total -= Files.size(file);
+                    deleteQuietly(file);
+                }
+            }
+            try (Stream<Path> files = Files.list(idDir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (Files.getLastModifiedTime(file).toMillis() < cutoff) deleteQuietly(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("[MIDIA] Falha na limpeza do cache: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException response) return response.getStatusCode().is5xxServerError();
+        return e instanceof WebClientRequestException;
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("[MIDIA] Não foi possível apagar {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Counter fetches(MeterRegistry registry, String result) {
+        return Counter.builder("barberbot.media.fetch")
+                .description("Pedidos de mídia por resultado (cache, download, erro)")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    static class MediaTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        MediaTooLargeException(String messageId, long maxBytes) {
+            super("Mídia " + messageId + " maior que o limite de " + maxBytes + " bytes");
+        }
+    }
+
+    // Aborta a decodificação assim que passar do limite, sem esperar o arquivo terminar
+    private static final class LimitedOutputStream extends FilterOutputStream {
+        private final String messageId;
+        private final long maxBytes;
+        private long written;
+
+        LimitedOutputStream(OutputStream out, String messageId, long maxBytes) {
+            super(out);
+            this.messageId = messageId;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            check(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            check(len);
+            out.write(b, off, len);
+        }
+
+        private void check(int len) throws IOException {
+            written += len;
+            if (written > maxBytes) throw new MediaTooLargeException(messageId, maxBytes);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.config.BarberBotProperties;
+import com.barberbot.api.dto.MediaHandle;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+
+/**
+ * Decodifica mídias base64 direto para arquivos temporários, em streaming.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MediaSpool {
+
+    private final BarberBotProperties properties;
+
+    /**
+     * Lê o valor base64 atual do parser e grava os bytes decodificados em disco,
+     * sem nunca montar a String inteira em memória.
+     */
+    public MediaHandle spool(JsonParser parser) throws IOException {
+        Path file = newFile();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            int size = parser.readBinaryValue(Base64Variants.MIME_NO_LINEFEEDS, out);
+            return new MediaHandle(file, size);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Para o base64 que já chegou como String (ex: busca na Evolution).
+     * Aceita também o formato "data:mime;base64,...".
+     */
+    public MediaHandle spool(String base64) {
+        if (base64 == null || base64.isBlank()) return null;
+        int comma = base64.indexOf(',');
+        int start = comma >= 0 ? comma + 1 : 0;
+        try {
+            Path file = newFile();
+            InputStream encoded = new ByteArrayInputStream(base64.substring(start).trim().getBytes(StandardCharsets.US_ASCII));
+            try (InputStream in = Base64.getMimeDecoder().wrap(encoded)) {
+                long size = Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+                return new MediaHandle(file, size);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Nao foi possivel decodificar midia base64: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private Path newFile() throws IOException {
+        Path dir = Paths.get(properties.getWebhook().getSpoolDir());
+        Files.createDirectories(dir);
+        return Files.createTempFile(dir, "media-", ".bin");
+    }
+}
@@ -0,0 +1,136 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.config.BarberBotProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Junta rajadas de mensagens do mesmo cliente ("oi" / "tudo bem?" / "quanto é o corte?") numa resposta só.
+ * <p>
+ * Cada mensagem reinicia a janela de silêncio ({@code quietMs}); a rajada é liberada quando o cliente para
+ * de digitar ou quando atinge {@code maxWaitMs} desde a primeira mensagem. A resposta volta para o
+ * {@link ConversationDispatcher} com a mesma chave da conversa, então continua em ordem com o resto.
+ * {@link #add} devolve um future que só completa depois da resposta da rajada: quem guarda a posição no
+ * journal espera por ele, e uma queda no meio da janela reentrega as mensagens em vez de perdê-las.
+ */
+@Slf4j
+@Component
+public class MessageCoalescer {
+
+    private final ConversationDispatcher conversationDispatcher;
+    private final long quietMs;
+    private final long maxWaitMs;
+    private final Map<String, Burst> bursts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "message-coalescer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final DistributionSummary burstSize;
+    private final Counter absorbedCounter;
+
+    private static class Burst {
+        private final List<String> texts = new ArrayList<>();
+        private final List<String> messageIds = new ArrayList<>();
+        private final long firstAt = System.currentTimeMillis();
+        private final CompletableFuture<Void> replied = new CompletableFuture<>();
+        private BiConsumer<List<String>, String> onFlush;
+        private ScheduledFuture<?> flush;
+    }
+
+    public MessageCoalescer(ConversationDispatcher conversationDispatcher, BarberBotProperties properties, MeterRegistry meterRegistry) {
+        this.conversationDispatcher = conversationDispatcher;
+        BarberBotProperties.Coalesce config = properties.getCoalesce();
+        this.quietMs = config.getQuietMs();
+        this.maxWaitMs = config.getMaxWaitMs();
+        this.burstSize = DistributionSummary.builder("barberbot.coalesce.burst.size")
+                .description("Mensagens do cliente respondidas juntas numa única resposta")
+                .register(meterRegistry);
+        this.absorbedCounter = Counter.builder("barberbot.coalesce.absorbed")
+                .description("Mensagens que entraram numa rajada em vez de gerar resposta própria")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Acrescenta o texto à rajada da conversa {@code key}. {@code onFlush} recebe os message ids e os textos juntos
+     * (um por linha). O future completa quando {@code onFlush} termina, com ou sem erro.
+     */
+    public CompletableFuture<Void> add(String key, String messageId, String text, BiConsumer<List<String>, String> onFlush) {
+        Burst added = bursts.compute(key, (k, burst) -> {
+            if (burst == null) burst = new Burst();
+            else absorbedCounter.increment();
+            burst.texts.add(text);
+            if (messageId != null) burst.messageIds.add(messageId);
+            burst.onFlush = onFlush;
+            if (burst.flush != null) burst.flush.cancel(false);
+            long untilMax = burst.firstAt + maxWaitMs - System.currentTimeMillis();
+            Burst current = burst;
+            burst.flush = timer.schedule(() -> release(k, current), Math.max(0, Math.min(quietMs, untilMax)), TimeUnit.MILLISECONDS);
+            return burst;
+        });
+        return added.replied;
+    }
+
+    /**
+     * Responde agora, na thread de quem chamou, a rajada pendente da conversa (se houver).
+     * Para quem já está na fila da conversa e precisa da resposta anterior antes de seguir (ex: clique no menu).
+     */
+    public void flush(String key) {
+        Burst burst = bursts.get(key);
+        if (burst == null || !bursts.remove(key, burst)) return;
+        if (burst.flush != null) burst.flush.cancel(false);
+        burstSize.record(burst.texts.size());
+        reply(burst);
+    }
+
+    private void release(String key, Burst burst) {
+        if (!bursts.remove(key, burst)) return; // já liberada ou substituída
+        burstSize.record(burst.texts.size());
+        dispatch(key, burst);
+    }
+
+    private void dispatch(String key, Burst burst) {
+        if (!conversationDispatcher.dispatch(key, () -> reply(burst))) {
+            // Fila cheia: tenta de novo logo mais, sem perder a rajada
+            timer.schedule(() -> dispatch(key, burst), 100, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void reply(Burst burst) {
+        try {
+            burst.onFlush.accept(burst.messageIds, String.join("\n", burst.texts));
+        } finally {
+            burst.replied.complete(null);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        // Rajadas pendentes respondem na hora, na thread de desligamento
+        bursts.forEach((key, burst) -> {
+            if (!bursts.remove(key, burst)) return;
+            try {
+                reply(burst);
+            } catch (Exception e) {
+                log.warn("[RAJADA] Falha respondendo conversa {} no desligamento: {}", key, e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,162 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.config.BarberBotProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Deduplicação de message id por janelas de tempo.
+ * <p>
+ * Um anel de N baldes; cada balde é um conjunto compacto de hashes de 64 bits (endereçamento aberto,
+ * sem objetos por entrada) e cobre {@code bucketMinutes}. Expirar é só descartar o balde mais antigo
+ * quando o anel dá a volta - nada de varrer mapa. Na subida, os ids da janela são recarregados do banco.
+ * <p>
+ * O anel só descarta as repetições imediatas do webhook. Quem decide é a tabela processed_messages:
+ * {@link #claim} grava o id (ON CONFLICT DO NOTHING) antes do primeiro efeito da mensagem, de cliente ou do admin
+ * (numa rajada, antes da resposta), então o journal reentregando entradas depois de uma queda não repete
+ * disparo, importação nem resposta.
+ */
+@Slf4j
+@Component
+public class MessageDeduplicator {
+
+    private static final String CLAIM_SQL =
+            "INSERT INTO processed_messages (message_id, processed_at) VALUES (?, ?) ON CONFLICT DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int retentionDays;
+    private final long bucketMillis;
+    private final Bucket[] ring;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public MessageDeduplicator(JdbcTemplate jdbcTemplate, BarberBotProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        BarberBotProperties.Dedup config = properties.getDedup();
+        this.retentionDays = config.getRetentionDays();
+        this.bucketMillis = config.getBucketMinutes() * 60_000L;
+        this.ring = new Bucket[config.getBuckets()];
+        for (int i = 0; i < ring.length; i++) ring[i] = new Bucket();
+    }
+
+    @PostConstruct
+    public void warmUp() {
+        LocalDateTime since = LocalDateTime.now().minusNanos(bucketMillis * ring.length * 1_000_000L);
+        List<String> recent = jdbcTemplate.queryForList(
+                "SELECT message_id FROM processed_messages WHERE processed_at > ?", String.class, Timestamp.valueOf(since));
+        recent.forEach(this::markIfNew);
+        log.info("[DEDUP] {} message ids recentes carregados do banco", recent.size());
+    }
+
+    /**
+     * Reserva o id no banco, logo antes do primeiro efeito da mensagem. Retorna false se ele já foi atendido
+     * (replay do journal). Sem banco, segue: melhor responder de novo do que perder a mensagem.
+     */
+    public boolean claim(String messageId) {
+        if (messageId == null) return true;
+        try {
+            return jdbcTemplate.update(CLAIM_SQL, messageId, Timestamp.valueOf(LocalDateTime.now())) > 0;
+        } catch (Exception e) {
+            log.warn("[DEDUP] Falha gravando message id {} ({}). Seguindo só com a deduplicação em memória.", messageId, e.getMessage());
+            return true;
+        }
+    }
+
+    // O journal só reentrega o que não foi confirmado; ids mais velhos que isso não voltam
+    @Scheduled(cron = "0 30 4 * * *")
+    public void purge() {
+        int removed = jdbcTemplate.update("DELETE FROM processed_messages WHERE processed_at < ?",
+                Timestamp.valueOf(LocalDateTime.now().minusDays(retentionDays)));
+        if (removed > 0) log.info("[DEDUP] {} message ids antigos removidos", removed);
+    }
+
+    /**
+     * Marca o id como visto, só em memória. Retorna false se ele já apareceu dentro da janela.
+     */
+    public boolean markIfNew(String messageId) {
+        long hash = hash(messageId);
+        long epoch = System.currentTimeMillis() / bucketMillis;
+        lock.lock();
+        try {
+            Bucket current = ring[(int) (epoch % ring.length)];
+            if (current.epoch != epoch) current.reset(epoch);
+            for (Bucket bucket : ring) {
+                if (bucket.epoch > epoch - ring.length && bucket.contains(hash)) return false;
+            }
+            current.add(hash);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // FNV-1a 64 + finalizador do murmur3: espalha bem ids parecidos (3EB0..., BAE5...)
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h; // 0 marca posição vazia
+    }
+
+    // Conjunto de longs com endereçamento aberto (sondagem linear), cresce em potências de 2
+    private static final class Bucket {
+        private long epoch = Long.MIN_VALUE;
+        private long[] table = new long[256];
+        private int size;
+
+        void reset(long epoch) {
+            this.epoch = epoch;
+            if (table.length > 256) table = new long[256];
+            else Arrays.fill(table, 0L);
+            size = 0;
+        }
+
+        boolean contains(long hash) {
+            int mask = table.length - 1;
+            for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+                long v = table[i];
+                if (v == 0) return false;
+                if (v == hash) return true;
+            }
+        }
+
+        void add(long hash) {
+            if ((size + 1) * 2 > table.length) grow();
+            insert(table, hash);
+            size++;
+        }
+
+        private void grow() {
+            long[] bigger = new long[table.length * 2];
+            for (long v : table) {
+                if (v != 0) insert(bigger, v);
+            }
+            table = bigger;
+        }
+
+        private static void insert(long[] t, long hash) {
+            int mask = t.length - 1;
+            int i = (int) hash & mask;
+            while (t[i] != 0) {
+                if (t[i] == hash) return;
+                i = (i + 1) & mask;
+            }
+            t[i] = hash;
+        }
+    }
+}
@@ -1,21 +1,41 @@
 package com.barberbot.api.service;
 
 import com.barberbot.api.config.BarberBotProperties;
+import com.barberbot.api.dto.MediaHandle;
+import com.barberbot.api.model.Interaction;
 import dev.langchain4j.data.message.*;
+import dev.langchain4j.model.StreamingResponseHandler;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.MultipartBodyBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -24,11 +44,18 @@ import java.util.List;
 public class OpenAIService {
     
     private final OpenAiChatModel chatModel;
+    private final OpenAiStreamingChatModel streamingChatModel;
     private final BarberBotProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final AgendaImagePreprocessor agendaImagePreprocessor;
+    private final AgendaImageCache agendaImageCache;
     private WebClient openAiWebClient;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    private static final String SYSTEM_PROMPT_RECEPTIONIST = """
+    public static final String FALLBACK_RESPONSE = "Opa, estou finalizando um atendimento aqui! Pode repetir o que você disse?";
+
+    // Prefixo fixo de toda chamada de chat: qualquer byte diferente desfaz o cache de prompt da OpenAI
+    static final String SYSTEM_PROMPT_RECEPTIONIST = """
             Você é a recepcionista virtual oficial e super carismática da **LH Barbearia**.
             Sua missão é encantar o cliente desde o primeiro 'Oi', refletindo o nosso lema: "Corte novo, autoestima renovada!" 💈🔥
             
@@ -67,6 +94,13 @@ public class OpenAIService {
             4. Se o cliente tiver problemas complexos, quiser falar com o barbeiro ou tratar assuntos financeiros, diga que vai chamar o Luiz e peça para ele digitar *4*.
             """;
     
+    private static final String SYSTEM_PROMPT_SUMMARY = """
+            Você resume conversas de WhatsApp entre um cliente e a recepcionista virtual da LH Barbearia.
+            Junte o resumo anterior com as novas mensagens num único resumo em português, com no máximo 80 palavras.
+            Guarde só o que ajuda no atendimento: preferências, serviços de interesse, horários combinados, pendências.
+            Responda apenas com o resumo, sem introdução.
+            """;
+
     private static final String SYSTEM_PROMPT_AGENDA_READER = """
             Você é um assistente especializado em ler prints de sistemas de agendamento (CashBarber).
             Sua tarefa: Analisar a imagem e extrair os agendamentos.
@@ -75,48 +109,197 @@ public class OpenAIService {
             Retorne APENAS um JSON válido (sem markdown) no formato exato:
             {"items": [{"date": "26/02", "name": "Adilson Martins", "time": "14:30", "service": "Corte de cabelo completo"}]}
             """;
+
+    private static final String AGENDA_TILE_INSTRUCTION = """
+            Esta imagem é a parte %d de %d de um print longo, cortado de cima para baixo (as partes se sobrepõem um pouco).
+            Extraia os agendamentos desta parte para JSON. Ignore linhas cortadas pela borda da imagem.
+            Se a data não aparecer nesta parte, use "?" no campo date.""";
     
-    public String processCustomerMessage(String userMessage, List<String> recentHistory) {
+    /**
+     * Muda sempre que o prompt da recepcionista, o modelo ou a temperatura mudam (invalida o {@link ResponseCache}).
+     */
+    public int receptionistFingerprint() {
+        return Objects.hash(SYSTEM_PROMPT_RECEPTIONIST, properties.getOpenai().getModel(), properties.getOpenai().getTemperature());
+    }
+
+    public String processCustomerMessage(ChatContextBuilder.ChatContext context) {
+        long start = System.nanoTime();
         try {
-            List<ChatMessage> messages = new ArrayList<>();
-            messages.add(SystemMessage.from(SYSTEM_PROMPT_RECEPTIONIST));
-            if (recentHistory != null) {
-                for (int i = 0; i < recentHistory.size(); i++) {
-                    if (i % 2 == 0) messages.add(UserMessage.from(recentHistory.get(i)));
-                    else messages.add(AiMessage.from(recentHistory.get(i)));
-                }
-            }
-            messages.add(UserMessage.from(userMessage));
-            return chatModel.generate(messages).content().text();
+            String reply = chatModel.generate(context.messages()).content().text();
+            // No modo bloqueante a primeira mensagem só sai com a resposta inteira
+            firstMessageTimer("blocking").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return reply;
         } catch (Exception e) {
             log.error("Erro Chat: {}", e.getMessage());
-            return "Opa, estou finalizando um atendimento aqui! Pode repetir o que você disse?";
+            return FALLBACK_RESPONSE;
+        }
+    }
+
+    /**
+     * Mesma conversa do {@link #processCustomerMessage}, mas em streaming: cada trecho completo (parágrafo
+     * ou frase) é entregue a {@code onChunk} na ordem, na thread de quem chamou, enquanto o modelo ainda gera.
+     * Retorna o texto completo para ser gravado no histórico.
+     */
+    public String streamCustomerMessage(ChatContextBuilder.ChatContext context, Consumer<String> onChunk) {
+        long start = System.nanoTime();
+        BlockingQueue<StreamEvent> events = new LinkedBlockingQueue<>();
+        SentenceSplitter splitter = new SentenceSplitter(properties.getOpenai().getStreamingMinChars());
+
+        streamingChatModel.generate(context.messages(), new StreamingResponseHandler<AiMessage>() {
+            @Override
+            public void onNext(String token) {
+                for (String chunk : splitter.append(token)) events.add(StreamEvent.chunk(chunk));
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                String rest = splitter.flush();
+                if (rest != null) events.add(StreamEvent.chunk(rest));
+                events.add(StreamEvent.done(response.content().text()));
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                events.add(StreamEvent.failed(error));
+            }
+        });
+
+        StringBuilder sent = new StringBuilder();
+        try {
+            while (true) {
+                StreamEvent event = events.poll(60, TimeUnit.SECONDS);
+                if (event == null) throw new TimeoutException("sem resposta do modelo em 60s");
+                if (event.error() != null) throw event.error();
+                if (event.done()) return event.text() != null ? event.text() : sent.toString();
+                if (sent.length() == 0) firstMessageTimer("stream").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                else sent.append("\n\n");
+                sent.append(event.text());
+                onChunk.accept(event.text());
+            }
+        } catch (Throwable e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.error("Erro Chat (streaming): {}", e.getMessage());
+            if (sent.length() > 0) return sent.toString(); // o cliente já recebeu parte da resposta
+            onChunk.accept(FALLBACK_RESPONSE);
+            return FALLBACK_RESPONSE;
+        }
+    }
+
+    private record StreamEvent(String text, boolean done, Throwable error) {
+        static StreamEvent chunk(String text) { return new StreamEvent(text, false, null); }
+        static StreamEvent done(String fullText) { return new StreamEvent(fullText, true, null); }
+        static StreamEvent failed(Throwable error) { return new StreamEvent(null, false, error); }
+    }
+
+    /**
+     * Resumo curto da conversa: o resumo anterior (se houver) mais as falas que saíram do contexto.
+     * Retorna null em caso de erro (o resumo antigo continua valendo).
+     */
+    public String summarizeConversation(String previousSummary, List<ConversationCache.Turn> turns) {
+        StringBuilder sb = new StringBuilder();
+        if (previousSummary != null) sb.append("Resumo anterior: ").append(previousSummary).append("\n\n");
+        sb.append("Novas mensagens:\n");
+        for (ConversationCache.Turn turn : turns) {
+            sb.append(turn.type() == Interaction.InteractionType.USER ? "Cliente: " : "Atendente: ").append(turn.content()).append('\n');
+        }
+        try {
+            return chatModel.generate(SystemMessage.from(SYSTEM_PROMPT_SUMMARY), UserMessage.from(sb.toString())).content().text();
+        } catch (Exception e) {
+            log.error("Erro Resumo: {}", e.getMessage());
+            return null;
         }
     }
+
+    // Tempo até o cliente receber a primeira mensagem da resposta, por modo (blocking x stream)
+    private Timer firstMessageTimer(String mode) {
+        return Timer.builder("barberbot.llm.first.message")
+                .description("Tempo até a primeira mensagem da resposta do LLM ficar pronta para envio")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
     
-    public String extractAgendaFromImage(String base64Image, String mimeType) {
+    /**
+     * Lê a agenda do print. A imagem é pré-processada ({@link AgendaImagePreprocessor}); print já lido volta do
+     * {@link AgendaImageCache} sem chamar o modelo; print de rolagem vai em partes lidas em paralelo e juntadas.
+     */
+    public String extractAgendaFromImage(MediaHandle image, String mimeType) {
         try {
-            String pureBase64 = base64Image.contains(",") ? base64Image.split(",")[1] : base64Image;
-            String cleanMime = (mimeType != null && mimeType.contains("image/")) ? mimeType.split(";")[0] : "image/jpeg";
-            
-            UserMessage userMessage = UserMessage.from(
-                TextContent.from("Extraia os agendamentos desta imagem para JSON."),
-                ImageContent.from(pureBase64, cleanMime) 
-            );
-            SystemMessage systemMessage = SystemMessage.from(SYSTEM_PROMPT_AGENDA_READER);
-            String response = chatModel.generate(systemMessage, userMessage).content().text();
-            return response.replace("```json", "").replace("```", "").trim();
+            AgendaImagePreprocessor.Prepared prepared = agendaImagePreprocessor.prepare(image, mimeType);
+            String cached = agendaImageCache.get(prepared.fingerprint());
+            if (cached != null) return cached;
+
+            int parts = prepared.tiles().size();
+            long uploaded = 4L * ((prepared.uploadBytes() + 2 * parts) / 3); // base64
+            uploadSummary().record(uploaded);
+            log.info("[VISÃO] Agenda: {} KB → {} KB enviados em {} parte(s)", prepared.originalBytes() / 1024, uploaded / 1024, parts);
+
+            List<String> results = Flux.range(0, parts)
+                    .flatMapSequential(i -> Mono.fromCallable(() -> extractAgendaTile(prepared.tiles().get(i), i, parts))
+                            .subscribeOn(Schedulers.boundedElastic()), properties.getVision().getTileConcurrency())
+                    .collectList()
+                    .block();
+            String json = parts == 1 ? results.get(0) : mergeAgendaTiles(results);
+            agendaImageCache.put(prepared.fingerprint(), json);
+            return json;
         } catch (Exception e) {
             log.error("Erro Visão: {}", e.getMessage());
             throw new RuntimeException("Falha ao ler imagem.", e);
         }
     }
+
+    private String extractAgendaTile(AgendaImagePreprocessor.Tile tile, int index, int parts) {
+        String mimeType = (tile.mimeType() != null && tile.mimeType().contains("image/")) ? tile.mimeType().split(";")[0] : "image/jpeg";
+        String instruction = parts == 1
+                ? "Extraia os agendamentos desta imagem para JSON."
+                : String.format(AGENDA_TILE_INSTRUCTION, index + 1, parts);
+        UserMessage userMessage = UserMessage.from(
+            TextContent.from(instruction),
+            ImageContent.from(Base64.getEncoder().encodeToString(tile.bytes()), mimeType)
+        );
+        SystemMessage systemMessage = SystemMessage.from(SYSTEM_PROMPT_AGENDA_READER);
+        String response = chatModel.generate(systemMessage, userMessage).content().text();
+        return response.replace("```json", "").replace("```", "").trim();
+    }
+
+    /**
+     * Junta as partes na ordem: linha repetida na sobreposição entra uma vez só, e parte sem data
+     * ("?") herda a última data vista acima dela.
+     */
+    String mergeAgendaTiles(List<String> tiles) throws Exception {
+        ObjectNode merged = objectMapper.createObjectNode();
+        ArrayNode items = merged.putArray("items");
+        Set<String> seen = new HashSet<>();
+        String lastDate = null;
+        for (String tile : tiles) {
+            JsonNode parsed = objectMapper.readTree(tile).get("items");
+            if (parsed == null || !parsed.isArray()) continue;
+            for (JsonNode item : parsed) {
+                if (!(item instanceof ObjectNode node)) continue;
+                String date = node.path("date").asText("").trim();
+                if (date.isEmpty() || date.equals("?")) {
+                    node.put("date", lastDate != null ? lastDate : "Hoje");
+                } else {
+                    lastDate = date;
+                }
+                String key = TextNormalizer.normalize(node.path("date").asText()) + "|"
+                        + TextNormalizer.normalize(node.path("name").asText()) + "|"
+                        + TextNormalizer.normalize(node.path("time").asText());
+                if (seen.add(key)) items.add(node);
+            }
+        }
+        return objectMapper.writeValueAsString(merged);
+    }
+
+    // Bytes (base64) de imagem enviados ao modelo por agenda lida
+    private DistributionSummary uploadSummary() {
+        return DistributionSummary.builder("barberbot.agenda.upload.bytes")
+                .description("Bytes de imagem enviados ao modelo de visão por agenda")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
     
-    public String transcribeAudio(String base64Audio, String mimeType) {
+    public String transcribeAudio(MediaHandle audio, String mimeType) {
         try {
-            String pureBase64 = base64Audio.contains(",") ? base64Audio.split(",")[1] : base64Audio;
-            byte[] audioBytes = Base64.getDecoder().decode(pureBase64);
-            
             String extension = "ogg"; 
             if (mimeType != null) {
                 if (mimeType.contains("mp4")) extension = "mp4";
@@ -125,7 +308,8 @@ public class OpenAIService {
             final String filename = "audio." + extension;
             
             MultipartBodyBuilder builder = new MultipartBodyBuilder();
-            builder.part("file", new ByteArrayResource(audioBytes) {
+            // Sobe o arquivo direto do disco, sem carregar o áudio inteiro no heap
+            builder.part("file", new FileSystemResource(audio.getPath()) {
                 @Override public String getFilename() { return filename; }
             });
             builder.part("model", "whisper-1");
@@ -2,22 +2,22 @@ package com.barberbot.api.service;
 
 import com.barberbot.api.config.BarberBotProperties;
 import com.barberbot.api.dto.EvolutionWebhookDTO;
+import com.barberbot.api.dto.MediaHandle;
 import com.barberbot.api.model.Customer;
 import com.barberbot.api.model.Interaction;
 import com.barberbot.api.repository.CustomerRepository;
-import com.barberbot.api.repository.InteractionRepository;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -27,25 +27,26 @@ public class OrchestratorService {
     
     private final CustomerService customerService;
     private final CustomerRepository customerRepository;
-    private final InteractionRepository interactionRepository;
+    private final InteractionWriter interactionWriter;
     private final OpenAIService openAIService;
     private final WhatsAppService whatsAppService;
     private final AgendaService agendaService;
     private final BarberBotProperties properties;
+    private final MediaService mediaService;
+    private final MessageDeduplicator messageDeduplicator;
+    private final ConversationCache conversationCache;
+    private final FaqAnswerEngine faqAnswerEngine;
+    private final ResponseCache responseCache;
+    private final ChatContextBuilder chatContextBuilder;
+    private final MessageCoalescer messageCoalescer;
+    private final CampaignService campaignService;
 
-    private static final Map<String, LocalDateTime> processedMessageIds = new ConcurrentHashMap<>();
     private static final Map<String, String> adminStates = new ConcurrentHashMap<>();
     
     // NOVO: Memória para a lista de Retomar
     private static final Map<String, List<String>> adminRetomarOptions = new ConcurrentHashMap<>();
-    
-    private final ObjectMapper objectMapper = new ObjectMapper();
 
-    @Scheduled(fixedRate = 600000) 
-    public void clearProcessedCache() {
-        LocalDateTime limit = LocalDateTime.now().minusMinutes(20);
-        processedMessageIds.entrySet().removeIf(entry -> entry.getValue().isBefore(limit));
-    }
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
 
     @Scheduled(cron = "0 0 20 * * *", zone = "America/Sao_Paulo")
     public void solicitarAgendaAmanha() {
@@ -60,11 +61,16 @@ public class OrchestratorService {
         whatsAppService.sendTextMessage(adminPhone, "☀️ Bom dia, Chefe! O robô já acordou. 🤖\n\n📅 *Nossa agenda mapeada para hoje é:*\n\n" + agenda + "\n\n🚀 Fique tranquilo, eu cuidarei de enviar a mensagem de lembrete 1 hora antes para cada um deles!");
     }
 
-    @Async
-    public void processWebhook(EvolutionWebhookDTO webhook) {
+    /**
+     * Processa uma mensagem. Chamado pelo ConversationDispatcher, que garante
+     * uma mensagem por vez por conversa (sem corrida em cliente, histórico e adminStates).
+     * O future completa quando a mensagem foi respondida; numa rajada, só depois da resposta da rajada.
+     */
+    public CompletableFuture<Void> processWebhook(EvolutionWebhookDTO webhook) {
+        CompletableFuture<Void> done = DONE;
         try {
-            if (shouldIgnoreMessage(webhook)) return;
-            if (isDuplicateMessage(webhook)) return;
+            if (shouldIgnoreMessage(webhook)) return DONE;
+            if (isDuplicateMessage(webhook)) return DONE;
             
             String phoneNumber = webhook.getPhoneNumber();
             log.info("=====================================================");
@@ -72,20 +78,24 @@ public class OrchestratorService {
             
             if (isAdminNumber(phoneNumber)) {
                 log.info("[SISTEMA] Identificado como ADMINISTRADOR (Luiz/Sistema).");
+                if (!claim(webhook)) return DONE;
                 processAdminMessage(webhook, phoneNumber);
             } else {
                 if (customerService.isCustomerPaused(phoneNumber)) {
                     log.info("[SISTEMA] Cliente {} está PAUSADO (Atendimento Humano). Bot silenciado.", phoneNumber);
-                    return;
+                    return DONE;
                 }
                 log.info("[SISTEMA] Identificado como CLIENTE.");
-                processCustomerMessage(webhook, phoneNumber);
+                done = processCustomerMessage(webhook, phoneNumber);
             }
             log.info("=====================================================");
 
         } catch (Exception e) {
             log.error("[ERRO FATAL NO ORCHESTRATOR] {}", e.getMessage(), e);
+        } finally {
+            webhook.releaseMedia();
         }
+        return done;
     }
 
     private boolean shouldIgnoreMessage(EvolutionWebhookDTO webhook) {
@@ -95,59 +105,47 @@ public class OrchestratorService {
         return false;
     }
 
+    // Repetição imediata do webhook (memória); o replay do journal é barrado em claim()
     private boolean isDuplicateMessage(EvolutionWebhookDTO webhook) {
         String messageId = webhook.getData().getKey().getId();
-        if (messageId != null) {
-            if (processedMessageIds.putIfAbsent(messageId, LocalDateTime.now()) != null) return true;
-            if (interactionRepository.existsByMessageId(messageId)) return true;
+        return messageId != null && !messageDeduplicator.markIfNew(messageId);
+    }
+
+    // Grava o id em processed_messages antes do primeiro efeito: replay do journal não repete nada
+    private boolean claim(EvolutionWebhookDTO webhook) {
+        return claimAny(List.of(webhook.getData().getKey().getId()));
+    }
+
+    private boolean claimAny(List<String> messageIds) {
+        boolean any = messageIds.isEmpty();
+        for (String messageId : messageIds) {
+            if (messageDeduplicator.claim(messageId)) any = true;
         }
-        return false;
+        if (!any) log.info("[DEDUP] Mensagem {} já atendida antes da queda. Ignorando.", messageIds);
+        return any;
     }
     
+    // Chave canônica do admin, calculada uma vez (0 = sem admin configurado)
+    private volatile long adminKey = -1;
+
     private boolean isAdminNumber(String phoneNumber) {
-        String adminEnv = properties.getAdmin().getPhone().replaceAll("[^0-9]", "");
-        String phoneIn = phoneNumber.replaceAll("[^0-9]", "");
-        
-        if (adminEnv.isEmpty()) return false;
-        
-        String adminBase = adminEnv.startsWith("55") ? adminEnv.substring(2) : adminEnv;
-        String phoneBase = phoneIn.startsWith("55") ? phoneIn.substring(2) : phoneIn;
-        
-        if (adminBase.equals(phoneBase)) return true;
-        
-        if (adminBase.length() >= 8 && phoneBase.length() >= 8) {
-            String last8Admin = adminBase.substring(adminBase.length() - 8);
-            String last8Phone = phoneBase.substring(phoneBase.length() - 8);
-            if (last8Admin.equals(last8Phone) && adminBase.substring(0, 2).equals(phoneBase.substring(0, 2))) {
-                return true;
-            }
-        }
-        return false;
+        long admin = adminKey;
+        if (admin < 0) adminKey = admin = PhoneNumbers.canonical(properties.getAdmin().getPhone());
+        return admin != 0 && admin == PhoneNumbers.canonical(phoneNumber);
     }
 
-    private String fetchBase64FromEvolution(String messageId) {
-        try {
-            String baseUrl = properties.getEvolution().getBaseUrl();
-            if (baseUrl.endsWith("/")) baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
-            String url = baseUrl + "/chat/getBase64FromMediaMessage/" + properties.getEvolution().getInstanceName();
-            String jsonPayload = String.format("{\"message\":{\"key\":{\"id\":\"%s\"}}}", messageId);
-            
-            java.net.http.HttpRequest request = java.net.http.HttpRequest.newBuilder()
-                    .uri(java.net.URI.create(url))
-                    .header("Content-Type", "application/json")
-                    .header("apikey", properties.getEvolution().getApiKey())
-                    .POST(java.net.http.HttpRequest.BodyPublishers.ofString(jsonPayload))
-                    .build();
-            
-            java.net.http.HttpResponse<String> response = java.net.http.HttpClient.newHttpClient()
-                    .send(request, java.net.http.HttpResponse.BodyHandlers.ofString());
-            
-            if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                com.fasterxml.jackson.databind.JsonNode root = objectMapper.readTree(response.body());
-                if (root.has("base64") && !root.get("base64").isNull()) return root.get("base64").asText();
-            }
-        } catch (Exception e) {}
-        return null;
+    /**
+     * Mídia inline do webhook (já em disco) ou, se a Evolution não mandou o base64, busca pelo id.
+     * As duas passam pelo cache de mídias, então reprocessar a mensagem não baixa o arquivo de novo.
+     */
+    private MediaHandle resolveMedia(EvolutionWebhookDTO webhook) {
+        String messageId = webhook.getData().getKey().getId();
+        if (webhook.getMedia() == null) {
+            webhook.setMedia(mediaService.fetch(messageId).block());
+        } else {
+            webhook.setMedia(mediaService.adopt(messageId, webhook.getMedia()));
+        }
+        return webhook.getMedia();
     }
     
     // ==========================================
@@ -158,14 +156,14 @@ public class OrchestratorService {
         
         if (webhook.hasDocument()) {
             adminStates.remove(phoneNumber);
-            String base64 = webhook.getBase64() != null ? webhook.getBase64() : fetchBase64FromEvolution(webhook.getData().getKey().getId());
-            if (base64 == null) {
+            MediaHandle csv = resolveMedia(webhook);
+            if (csv == null) {
                 whatsAppService.sendTextMessage(phoneNumber, "❌ O arquivo CSV chegou corrompido.");
                 return;
             }
             whatsAppService.sendTextMessage(phoneNumber, "⏳ Lendo a base de clientes do CSV...");
             try {
-                int salvos = customerService.importCustomersFromCsvBase64(base64);
+                int salvos = customerService.importCustomersFromCsv(csv);
                 whatsAppService.sendTextMessage(phoneNumber, "✅ Importação Concluída!\nForam salvos/atualizados *" + salvos + "* clientes.");
             } catch (Exception e) {
                 whatsAppService.sendTextMessage(phoneNumber, "❌ Erro ao processar o CSV.");
@@ -175,16 +173,21 @@ public class OrchestratorService {
 
         if (webhook.hasImage()) {
             adminStates.remove(phoneNumber);
-            String base64 = webhook.getBase64() != null ? webhook.getBase64() : fetchBase64FromEvolution(webhook.getData().getKey().getId());
-            if (base64 == null) {
+            MediaHandle image = resolveMedia(webhook);
+            if (image == null) {
                 whatsAppService.sendTextMessage(phoneNumber, "❌ A imagem não pôde ser decodificada.");
                 return;
             }
             whatsAppService.sendTextMessage(phoneNumber, "⏳ Visão Computacional ativada. Lendo horários...");
             try {
-                String agendaJson = openAIService.extractAgendaFromImage(base64, webhook.getMimeType());
-                int salvos = agendaService.processAgenda(agendaJson);
-                whatsAppService.sendTextMessage(phoneNumber, "✅ Agenda lida com sucesso! " + salvos + " clientes identificados para receber o lembrete. Digite *6* para conferir.");
+                String agendaJson = openAIService.extractAgendaFromImage(image, webhook.getMimeType());
+                AgendaService.ResultadoAgenda resultado = agendaService.processAgenda(agendaJson);
+                StringBuilder resposta = new StringBuilder("✅ Agenda lida com sucesso! " + resultado.agendados() + " clientes identificados para receber o lembrete. Digite *6* para conferir.");
+                if (!resultado.ambiguos().isEmpty()) {
+                    resposta.append("\n\n⚠️ *Confira estes nomes* (mais de um cliente parecido, ficaram sem lembrete):\n");
+                    for (String ambiguo : resultado.ambiguos()) resposta.append("• ").append(ambiguo).append("\n");
+                }
+                whatsAppService.sendTextMessage(phoneNumber, resposta.toString());
             } catch (Exception e) {
                 whatsAppService.sendTextMessage(phoneNumber, "❌ Erro na IA ao ler a imagem.");
             }
@@ -192,10 +195,10 @@ public class OrchestratorService {
         } 
         
         if (webhook.hasAudio()) {
-            String base64 = webhook.getBase64() != null ? webhook.getBase64() : fetchBase64FromEvolution(webhook.getData().getKey().getId());
-            if (base64 == null) return;
+            MediaHandle audio = resolveMedia(webhook);
+            if (audio == null) return;
             whatsAppService.sendTextMessage(phoneNumber, "🎧 Ouvindo seu áudio...");
-            command = openAIService.transcribeAudio(base64, webhook.getMimeType());
+            command = openAIService.transcribeAudio(audio, webhook.getMimeType());
             if (!adminStates.containsKey(phoneNumber) && command != null && !isSystemCommand(command)) {
                 whatsAppService.sendTextMessage(phoneNumber, "📝 *Transcrição Livre:*\n" + command);
                 return;
@@ -217,17 +220,17 @@ public class OrchestratorService {
                 }
                 if (currentState.equals("AVISO_BASE")) {
                     adminStates.remove(phoneNumber);
-                    performBroadcast(phoneNumber, originalCommand, false);
+                    campaignService.start(phoneNumber, originalCommand, false);
                     return;
                 }
                 if (currentState.equals("AVISO_PROSPEC")) {
                     adminStates.remove(phoneNumber);
-                    performBroadcast(phoneNumber, originalCommand, true);
+                    campaignService.start(phoneNumber, originalCommand, true);
                     return;
                 }
                 if (currentState.equals("PAUSAR")) {
                     adminStates.remove(phoneNumber);
-                    String target = cmdLower.replaceAll("[^0-9]", "");
+                    String target = PhoneNumbers.e164(cmdLower);
                     customerService.pauseCustomer(target, 60);
                     whatsAppService.sendTextMessage(phoneNumber, "⏸️ Robô silenciado com sucesso.");
                     return;
@@ -240,14 +243,14 @@ public class OrchestratorService {
                         if (options != null && index >= 0 && index < options.size()) {
                             String targetPhone = options.get(index);
                             customerService.resumeCustomer(targetPhone);
-                            Customer c = customerRepository.findByPhoneNumber(targetPhone).orElse(null);
-                            String name = (c != null && c.getName() != null) ? c.getName() : targetPhone;
+                            String name = customerService.findNameByPhone(targetPhone);
+                            if (name == null) name = targetPhone;
                             whatsAppService.sendTextMessage(phoneNumber, "▶️ Robô religado para: *" + name + "*");
                         } else {
                             whatsAppService.sendTextMessage(phoneNumber, "❌ Opção inválida. Ação cancelada.");
                         }
                     } catch (Exception e) {
-                        String target = cmdLower.replaceAll("[^0-9]", "");
+                        String target = PhoneNumbers.e164(cmdLower);
                         if (target.length() >= 10) {
                             customerService.resumeCustomer(target);
                             whatsAppService.sendTextMessage(phoneNumber, "▶️ Robô religado.");
@@ -275,6 +278,11 @@ public class OrchestratorService {
             } else if (cmdLower.equals("3") || cmdLower.contains("prospec")) {
                 adminStates.put(phoneNumber, "AVISO_PROSPEC");
                 whatsAppService.sendTextMessage(phoneNumber, "🎯 *Disparo 2: Prospecção*\n\nEnvie a sua mensagem de oferta.");
+            } else if (cmdLower.equals("9") || cmdLower.contains("campanha")) {
+                if (cmdLower.contains("pausa")) campaignService.pause(phoneNumber);
+                else if (cmdLower.contains("retoma")) campaignService.resume(phoneNumber);
+                else if (cmdLower.contains("cancela")) campaignService.cancel(phoneNumber);
+                else campaignService.status(phoneNumber);
             } else if (cmdLower.equals("4") || cmdLower.contains("pausar") || cmdLower.contains("pausa")) {
                 adminStates.put(phoneNumber, "PAUSAR");
                 whatsAppService.sendTextMessage(phoneNumber, "⏸️ *Pausar Robô*\nDigite o número do cliente com DDD.");
@@ -289,8 +297,8 @@ public class OrchestratorService {
                     StringBuilder sb = new StringBuilder("▶️ *Retomar Robô - Clientes Pausados*\n\n");
                     for (int i = 0; i < pausedPhones.size(); i++) {
                         String p = pausedPhones.get(i);
-                        Customer c = customerRepository.findByPhoneNumber(p).orElse(null);
-                        String name = (c != null && c.getName() != null) ? c.getName() : "Desconhecido";
+                        String name = customerService.findNameByPhone(p);
+                        if (name == null) name = "Desconhecido";
                         sb.append("*").append(i + 1).append("* - ").append(name).append("\n");
                     }
                     sb.append("\nDigite o *NÚMERO DA OPÇÃO* (Ex: 1) para religar o robô.");
@@ -313,7 +321,8 @@ public class OrchestratorService {
     private boolean isSystemCommand(String text) {
         String t = text.toLowerCase().replaceAll("[^a-z ]", "");
         return t.contains("comando") || t.contains("resumo") || t.contains("aviso") || t.contains("prospec") || 
-               t.contains("pausar") || t.contains("retomar") || t.contains("agenda") || t.contains("importar");
+               t.contains("pausar") || t.contains("retomar") || t.contains("agenda") || t.contains("importar") ||
+               t.contains("campanha");
     }
 
     private void sendFullMenu(String phoneNumber) {
@@ -328,6 +337,7 @@ public class OrchestratorService {
                 *6* - 📅 Ver Agenda Salva
                 *7* - 📥 Importar Cliente (Manual)
                 *8* - 📸 Ler Agenda (Foto)
+                *9* - 📈 Campanha (andamento / pausar / retomar / cancelar)
                 """;
         whatsAppService.sendTextMessage(phoneNumber, fullMenu);
     }
@@ -337,8 +347,7 @@ public class OrchestratorService {
             String[] parts = originalCommand.split(",");
             if (parts.length >= 2) {
                 String name = parts[0].trim();
-                String phone = parts[1].replaceAll("[^0-9]", "");
-                if (phone.length() == 10 || phone.length() == 11) phone = "55" + phone;
+                String phone = PhoneNumbers.e164(parts[1]);
                 customerService.findOrCreateCustomer(phone, name);
                 whatsAppService.sendTextMessage(phoneNumber, "✅ Cliente *" + name + "* salvo!");
             } else {
@@ -347,30 +356,13 @@ public class OrchestratorService {
         } catch (Exception e) {}
     }
     
-    @Async
-    public void performBroadcast(String adminPhone, String message, boolean isProspecting) {
-        List<Customer> allCustomers = customerRepository.findAll();
-        whatsAppService.sendTextMessage(adminPhone, "🚀 Iniciando disparo para " + allCustomers.size() + " contatos...");
-        int sent = 0;
-        for (Customer customer : allCustomers) {
-            try {
-                if (customer.getPhoneNumber().contains(adminPhone)) continue;
-                String header = isProspecting ? "💈 *LH Barbearia* 💈\n\n" : "📢 *Aviso LH Barbearia*\n\n";
-                whatsAppService.sendTextMessage(customer.getPhoneNumber(), header + message);
-                sent++;
-                Thread.sleep(3000); 
-            } catch (Exception e) {}
-        }
-        whatsAppService.sendTextMessage(adminPhone, "✅ Disparo finalizado! Alcançou " + sent + " contatos.");
-    }
-    
     // ==========================================
     // FLUXO DO CLIENTE (A RECEPCIONISTA IA)
     // ==========================================
-    private void processCustomerMessage(EvolutionWebhookDTO webhook, String phoneNumber) {
+    private CompletableFuture<Void> processCustomerMessage(EvolutionWebhookDTO webhook, String phoneNumber) {
         if (webhook.hasSticker()) {
             log.info("[CLIENTE IN] Figurinha recebida de {}. Ignorando silenciosamente.", phoneNumber);
-            return;
+            return DONE;
         }
 
         String pushName = webhook.getData() != null ? webhook.getData().getPushName() : null;
@@ -379,9 +371,9 @@ public class OrchestratorService {
         String contentToSave = webhook.getMessageText();
         
         if (webhook.hasAudio()) {
-            String base64 = webhook.getBase64() != null ? webhook.getBase64() : fetchBase64FromEvolution(webhook.getData().getKey().getId());
-            if (base64 != null) {
-                contentToSave = openAIService.transcribeAudio(base64, webhook.getMimeType());
+            MediaHandle audio = resolveMedia(webhook);
+            if (audio != null) {
+                contentToSave = openAIService.transcribeAudio(audio, webhook.getMimeType());
             } else {
                 contentToSave = "[Áudio]";
             }
@@ -391,10 +383,46 @@ public class OrchestratorService {
 
         log.info("[CLIENTE IN] Mensagem recebida: '{}'", contentToSave);
 
+        // Clique no menu não espera rajada: a rajada pendente responde antes, na ordem, e o clique em seguida
+        String remoteJid = webhook.getData().getKey().getRemoteJid();
+        boolean coalesce = properties.getCoalesce().isEnabled() && !isMenuSelection(webhook, contentToSave);
+        if (!coalesce) {
+            if (properties.getCoalesce().isEnabled()) messageCoalescer.flush(remoteJid);
+            if (!claim(webhook)) return DONE;
+        }
+
         Customer customer = customerService.findOrCreateCustomer(phoneNumber, pushName);
-        boolean isFirstMessage = getRecentHistory(customer.getId()).isEmpty();
+        conversationCache.history(customer.getId()); // carrega o histórico antes de acrescentar a fala nova
+
+        // Cada mensagem é gravada na hora; a resposta pode esperar a rajada terminar
+        record(customer, Interaction.InteractionType.USER, contentToSave, messageId);
+
+        if (coalesce) {
+            // Os ids da rajada só são reservados na resposta: até lá o journal guarda a posição e reentrega
+            return messageCoalescer.add(remoteJid, messageId, contentToSave, (messageIds, merged) -> {
+                if (claimAny(messageIds)) replyToCustomer(customer, pushName, phoneNumber, merged);
+            });
+        }
+        replyToCustomer(customer, pushName, phoneNumber, contentToSave);
+        return DONE;
+    }
 
-        interactionRepository.save(Interaction.builder().customer(customer).type(Interaction.InteractionType.USER).content(contentToSave).messageId(messageId).build());
+    // Opção do menu: número do menu de texto, id de linha da lista ou botão
+    private static boolean isMenuSelection(EvolutionWebhookDTO webhook, String text) {
+        if (webhook.isInteractiveReply()) return true;
+        String trimmed = text.trim();
+        return trimmed.matches("[1-4]") || trimmed.startsWith("menu_");
+    }
+
+    // Responde a uma mensagem (ou rajada de mensagens, uma por linha) já gravada no histórico
+    private void replyToCustomer(Customer customer, String pushName, String phoneNumber, String contentToSave) {
+        if (customerService.isCustomerPaused(phoneNumber)) {
+            log.info("[SISTEMA] Cliente {} foi pausado antes da resposta. Bot silenciado.", phoneNumber);
+            return;
+        }
+        // Histórico ANTES destas mensagens: decide a saudação e vira o contexto do LLM
+        List<ConversationCache.Turn> history = withoutUnanswered(conversationCache.history(customer.getId()));
+        boolean isFirstMessage = history.isEmpty();
 
         String msgLower = contentToSave.toLowerCase().trim();
 
@@ -407,22 +435,64 @@ public class OrchestratorService {
         if (isFirstMessage || msgLower.matches("^(oi|olá|ola|bom dia|boa tarde|boa noite|menu).*")) {
             String firstName = pushName != null ? pushName.split(" ")[0] : "amigo(a)";
             
+            Duration menuDelay = Duration.ZERO;
             if (!msgLower.equals("menu")) {
                 saveAndSend(customer, "Olá, " + firstName + "! 👋 Bem-vindo(a) à *LH Barbearia*!\n_Corte novo, autoestima renovada!_ 💈", phoneNumber);
-                sleep(1000);
+                menuDelay = Duration.ofSeconds(1); // o menu sai 1s depois da saudação, sem segurar a thread
             }
-            sendFallbackTextMenu(customer, phoneNumber);
+            sendFallbackTextMenu(customer, phoneNumber, menuDelay);
+            return;
+        }
+
+        String localAnswer = faqAnswerEngine.answer(contentToSave);
+        if (localAnswer != null) {
+            log.info("[FAQ] Resposta local, sem chamar o LLM");
+            saveAndSend(customer, localAnswer, phoneNumber);
+            return;
+        }
+
+        // Conversa curta e sem resumo: a resposta depende só da mensagem e das perguntas anteriores (parte da chave)
+        List<String> previousQuestions = history.stream()
+                .filter(t -> t.type() == Interaction.InteractionType.USER)
+                .map(ConversationCache.Turn::content)
+                .toList();
+        boolean cacheable = properties.getResponseCache().isEnabled()
+                && previousQuestions.size() <= properties.getResponseCache().getMaxHistory()
+                && conversationCache.summary(customer.getId()) == null;
+        String cached = cacheable ? responseCache.get(previousQuestions, contentToSave) : null;
+        if (cached != null) {
+            log.info("[CACHE IA] Resposta reaproveitada, sem chamar o LLM");
+            saveAndSend(customer, cached, phoneNumber);
             return;
         }
 
         log.info("[IA PROCESSING] Chamando o GPT-4o...");
-        String aiResponse = openAIService.processCustomerMessage(contentToSave, getRecentHistory(customer.getId()));
+        long start = System.nanoTime();
+        ChatContextBuilder.ChatContext context = chatContextBuilder.build(customer.getId(), contentToSave, history);
+        String aiResponse;
+        if (properties.getOpenai().isStreaming()) {
+            // Cada frase/parágrafo sai assim que fica pronto; o histórico guarda a resposta inteira
+            aiResponse = openAIService.streamCustomerMessage(context,
+                    chunk -> whatsAppService.sendTextMessage(phoneNumber, chunk)); // a fila do destinatário mantém a ordem
+            saveBotMessage(customer, aiResponse);
+        } else {
+            aiResponse = openAIService.processCustomerMessage(context);
+            saveAndSend(customer, aiResponse, phoneNumber);
+        }
         log.info("[IA OUT] Resposta gerada: '{}'", aiResponse);
-        
-        saveAndSend(customer, aiResponse, phoneNumber);
+        if (cacheable && !OpenAIService.FALLBACK_RESPONSE.equals(aiResponse)) {
+            responseCache.put(previousQuestions, contentToSave, aiResponse, System.nanoTime() - start);
+        }
+    }
+
+    // Tira do fim as falas do cliente ainda sem resposta: são a mensagem (ou rajada) sendo respondida agora
+    private static List<ConversationCache.Turn> withoutUnanswered(List<ConversationCache.Turn> history) {
+        int end = history.size();
+        while (end > 0 && history.get(end - 1).type() == Interaction.InteractionType.USER) end--;
+        return history.subList(0, end);
     }
 
-    private void sendFallbackTextMenu(Customer customer, String phone) {
+    private void sendFallbackTextMenu(Customer customer, String phone, Duration delay) {
         String textMenu = """
                 💈 *Menu Principal - LH Barbearia* 💈
                 
@@ -435,20 +505,24 @@ public class OrchestratorService {
                 
                 💡 _Dica: Você também pode me mandar um áudio ou perguntar qualquer coisa escrevendo normalmente!_
                 """;
-        saveAndSend(customer, textMenu, phone);
+        saveBotMessage(customer, textMenu);
+        whatsAppService.sendTextMessageAfter(phone, textMenu, delay);
     }
 
     private void saveAndSend(Customer customer, String content, String phone) {
-        interactionRepository.save(Interaction.builder().customer(customer).type(Interaction.InteractionType.BOT).content(content).build());
+        saveBotMessage(customer, content);
         whatsAppService.sendTextMessage(phone, content);
     }
-    
-    private void sleep(long millis) {
-        try { Thread.sleep(millis); } catch (InterruptedException e) {}
+
+    private void saveBotMessage(Customer customer, String content) {
+        record(customer, Interaction.InteractionType.BOT, content, null);
     }
-    
-    private List<String> getRecentHistory(java.util.UUID customerId) {
-        return interactionRepository.findRecentInteractionsByCustomerId(customerId).stream()
-                .map(Interaction::getContent).collect(Collectors.toList());
+
+    // Banco (write-behind) e memória com o mesmo horário: o resumo da conversa compara por ele.
+    // Truncado em microssegundos, a precisão do TIMESTAMP do Postgres.
+    private void record(Customer customer, Interaction.InteractionType type, String content, String messageId) {
+        LocalDateTime timestamp = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        interactionWriter.enqueue(customer.getId(), type, content, messageId, timestamp);
+        conversationCache.append(customer.getId(), type, content, timestamp);
     }
 }
\ No newline at end of file
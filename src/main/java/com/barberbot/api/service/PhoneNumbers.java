@@ -0,0 +1,84 @@
+package com.barberbot.api.service;
+
+/**
+ * Normalização de telefones sem regex e sem alocação no caminho da chave.
+ * <p>
+ * {@link #canonical} gera a chave usada em buscas e comparações: E.164 como {@code long}, com DDI 55
+ * quando o número vem só com DDD, e o nono dígito de celular brasileiro removido
+ * (55 11 9 8765-4321 e 55 11 8765-4321 viram a mesma chave). {@link #e164} é o número para envio,
+ * que mantém o nono dígito como veio.
+ */
+public final class PhoneNumbers {
+
+    private static final int MAX_DIGITS = 15; // Limite do E.164
+
+    private PhoneNumbers() {
+    }
+
+    /**
+     * Chave canônica do telefone, ou 0 se não for um número válido.
+     * Aceita máscara ("(11) 98765-4321"), "+55..." e JIDs do WhatsApp ("5511...@s.whatsapp.net", "...:12@...").
+     */
+    public static long canonical(CharSequence raw) {
+        if (raw == null) return 0;
+        long value = 0;
+        int digits = 0;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '@' || c == ':') break;
+            if (c < '0' || c > '9') continue;
+            if (++digits > MAX_DIGITS) return 0;
+            value = value * 10 + (c - '0');
+        }
+        if (digits == 10 || digits == 11) {
+            value += 55 * pow10(digits); // só DDD + número: assume Brasil
+            digits += 2;
+        }
+        if (digits < 10) return 0;
+        // 55 DD 9XXXX-XXXX: tira o nono dígito de celular (começo 6-9 depois dele)
+        if (digits == 13 && value / 100_000_000_000L == 55) {
+            long local = value % 1_000_000_000L;          // 9 dígitos depois do DDD
+            long ddd = (value / 1_000_000_000L) % 100;
+            if (local / 100_000_000 == 9 && (local / 10_000_000) % 10 >= 6) {
+                value = 55 * 10_000_000_000L + ddd * 100_000_000L + local % 100_000_000;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Mesmo número? (com ou sem nono dígito, com ou sem DDI, com ou sem máscara)
+     */
+    public static boolean same(CharSequence a, CharSequence b) {
+        long key = canonical(a);
+        return key != 0 && key == canonical(b);
+    }
+
+    /**
+     * Só os dígitos (até o '@' ou ':' de um JID).
+     */
+    public static String digits(CharSequence raw) {
+        if (raw == null) return "";
+        StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '@' || c == ':') break;
+            if (c >= '0' && c <= '9') sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Número para envio: só dígitos, com DDI 55 quando vier só com DDD (10 ou 11 dígitos).
+     */
+    public static String e164(CharSequence raw) {
+        String digits = digits(raw);
+        return digits.length() == 10 || digits.length() == 11 ? "55" + digits : digits;
+    }
+
+    private static long pow10(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) result *= 10;
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+package com.barberbot.api.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Despertador do motor de disparos: roda uma ação no instante exato, sem esperar o próximo minuto.
+ * <p>
+ * Os lembretes em si ficam em scheduled_tasks; aqui só entra o "acorde às HH:mm" do
+ * {@link com.barberbot.api.scheduler.BarberBotScheduler#wakeAt}. Cada despertar é um instante absoluto numa
+ * {@link DelayQueue}; uma thread dorme até o próximo vencer. Horário já passado (pausa longa da JVM) dispara na
+ * hora, desde que o prazo ({@code deadline}) não tenha passado; depois dele é descartado. Agendar com uma chave
+ * já existente substitui o anterior.
+ */
+@Slf4j
+@Component
+public class ReminderEngine {
+
+    private static final class Reminder implements Delayed {
+        private final String key;
+        private final Instant fireAt;
+        private final Instant deadline;
+        private final Runnable action;
+        private volatile boolean cancelled;
+
+        Reminder(String key, Instant fireAt, Instant deadline, Runnable action) {
+            this.key = key;
+            this.fireAt = fireAt;
+            this.deadline = deadline;
+            this.action = action;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Duration.between(Instant.now(), fireAt));
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return fireAt.compareTo(((Reminder) other).fireAt);
+        }
+    }
+
+    private final DelayQueue<Reminder> queue = new DelayQueue<>();
+    private final Map<String, Reminder> byKey = new ConcurrentHashMap<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private final Timer lateness;
+    private final Counter expiredCounter;
+
+    public ReminderEngine(MeterRegistry meterRegistry) {
+        Gauge.builder("barberbot.reminders.scheduled", byKey, Map::size)
+                .description("Lembretes aguardando o horário")
+                .register(meterRegistry);
+        this.lateness = Timer.builder("barberbot.reminders.lateness")
+                .description("Atraso entre o horário previsto e o disparo do lembrete")
+                .register(meterRegistry);
+        this.expiredCounter = Counter.builder("barberbot.reminders.expired")
+                .description("Lembretes descartados porque o prazo passou antes do disparo")
+                .register(meterRegistry);
+
+        this.worker = new Thread(this::run, "reminder-engine");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Agenda {@code action} para {@code fireAt}. Se o horário já passou, dispara assim que possível,
+     * a menos que {@code deadline} também tenha passado. Uma chave repetida substitui o lembrete anterior.
+     */
+    public void schedule(String key, ZonedDateTime fireAt, ZonedDateTime deadline, Runnable action) {
+        Reminder reminder = new Reminder(key, fireAt.toInstant(), deadline.toInstant(), action);
+        Reminder previous = byKey.put(key, reminder);
+        if (previous != null) {
+            previous.cancelled = true;
+            queue.remove(previous);
+        }
+        queue.add(reminder);
+    }
+
+    private void run() {
+        while (running) {
+            Reminder reminder;
+            try {
+                reminder = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (reminder.cancelled || !byKey.remove(reminder.key, reminder)) continue;
+            Instant now = Instant.now();
+            if (now.isAfter(reminder.deadline)) {
+                expiredCounter.increment();
+                log.warn("[LEMBRETE] {} perdeu o prazo ({}). Descartado.", reminder.key, reminder.deadline);
+                continue;
+            }
+            Duration late = Duration.between(reminder.fireAt, now);
+            lateness.record(late.isNegative() ? Duration.ZERO : late);
+            try {
+                reminder.action.run();
+            } catch (Exception e) {
+                log.error("[LEMBRETE] Erro disparando {}: {}", reminder.key, e.getMessage(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+    }
+}
@@ -0,0 +1,314 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.config.BarberBotProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache das respostas do LLM para perguntas "soltas" (sem histórico relevante).
+ * <p>
+ * Chave: a mensagem normalizada (minúsculas, sem acento, sem palavras vazias), junto com as perguntas anteriores
+ * da conversa (o contexto que o LLM viu). Primeiro tenta a chave exata; depois, no mesmo contexto, por similaridade:
+ * cada chave vira um vetor de trigramas de caracteres e um índice invertido trigrama → entradas acha a vizinha
+ * mais próxima (cosseno) acima do limiar. A vizinha só vale se tiver as mesmas palavras, tirando erros de
+ * digitação: "nao atendem criancas" não reaproveita "atendem criancas", nem "corte barba" reaproveita "corte".
+ * Entradas expiram por TTL e o cache inteiro é descartado quando o prompt, o modelo ou o menu mudam.
+ */
+@Slf4j
+@Component
+public class ResponseCache {
+
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "o", "as", "os", "um", "uma", "de", "da", "do", "das", "dos", "e", "em", "no", "na", "nos", "nas",
+            "por", "pra", "para", "que", "me", "eu", "voce", "voces", "vc", "vcs", "ai", "ae", "ne", "la", "ta",
+            "oi", "ola", "opa", "bom", "boa", "dia", "tarde", "noite", "tudo", "bem", "favor",
+            "obrigado", "obrigada", "amigo", "mano", "ei", "hey", "queria", "gostaria", "saber");
+    // Invertem o sentido: nunca contam como erro de digitação de outra palavra
+    private static final Set<String> NEGATIONS = Set.of("nao", "nem", "nunca", "sem");
+
+    private static final String KEY_SEPARATOR = "\n";
+
+    private final OpenAIService openAIService;
+    private final BarberBotProperties properties;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final double similarity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Ordem de acesso: o primeiro é o menos usado recentemente
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<Integer, List<Posting>> postings = new HashMap<>();
+    private int fingerprint;
+
+    private final Counter exactHits;
+    private final Counter similarHits;
+    private final Counter misses;
+    private final Timer savedTimer;
+
+    private static final class Entry {
+        private final String key;
+        private final String context;
+        private final String[] words;
+        private final String response;
+        private final int[] grams;
+        private final float[] weights;
+        private final long createdAt = System.currentTimeMillis();
+        private final long llmNanos;
+
+        Entry(String key, String context, String[] words, String response, int[] grams, float[] weights, long llmNanos) {
+            this.key = key;
+            this.context = context;
+            this.words = words;
+            this.response = response;
+            this.grams = grams;
+            this.weights = weights;
+            this.llmNanos = llmNanos;
+        }
+    }
+
+    private record Posting(Entry entry, float weight) {}
+
+    public ResponseCache(OpenAIService openAIService, BarberBotProperties properties, MeterRegistry meterRegistry) {
+        this.openAIService = openAIService;
+        this.properties = properties;
+        BarberBotProperties.ResponseCache config = properties.getResponseCache();
+        this.maxEntries = config.getMaxEntries();
+        this.ttlMillis = config.getTtlMinutes() * 60_000L;
+        this.similarity = config.getSimilarity();
+        this.fingerprint = currentFingerprint();
+
+        this.exactHits = lookups(meterRegistry, "exact");
+        this.similarHits = lookups(meterRegistry, "similar");
+        this.misses = lookups(meterRegistry, "miss");
+        this.savedTimer = Timer.builder("barberbot.llm.cache.saved")
+                .description("Latência de LLM economizada por acerto (tempo da chamada original)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Resposta guardada para uma mensagem equivalente, depois das mesmas perguntas anteriores, ou null.
+     */
+    public String get(List<String> previousQuestions, String message) {
+        String key = key(message);
+        if (key.isEmpty()) return null;
+        String context = context(previousQuestions);
+        String[] words = words(key);
+        lock.lock();
+        try {
+            checkFingerprint();
+            long now = System.currentTimeMillis();
+            Entry exact = entries.get(context + KEY_SEPARATOR + key);
+            if (exact != null && now - exact.createdAt < ttlMillis) return hit(exact, exactHits);
+
+            Vector query = vector(key);
+            Map<Entry, Float> dots = new HashMap<>();
+            for (int i = 0; i < query.grams.length; i++) {
+                List<Posting> list = postings.get(query.grams[i]);
+                if (list == null) continue;
+                for (Posting posting : list) dots.merge(posting.entry(), query.weights[i] * posting.weight(), Float::sum);
+            }
+            Entry best = null;
+            float bestScore = 0;
+            for (Map.Entry<Entry, Float> e : dots.entrySet()) {
+                Entry candidate = e.getKey();
+                if (e.getValue() > bestScore && now - candidate.createdAt < ttlMillis
+                        && candidate.context.equals(context) && sameWords(words, candidate.words)) {
+                    best = e.getKey();
+                    bestScore = e.getValue();
+                }
+            }
+            if (best != null && bestScore >= similarity) {
+                entries.get(best.context + KEY_SEPARATOR + best.key); // marca como usada no LRU
+                return hit(best, similarHits);
+            }
+            misses.increment();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(List<String> previousQuestions, String message, String response, long llmNanos) {
+        String key = key(message);
+        if (key.isEmpty() || response == null || response.isBlank()) return;
+        String context = context(previousQuestions);
+        Vector vector = vector(key);
+        Entry entry = new Entry(key, context, words(key), response, vector.grams, vector.weights, llmNanos);
+        lock.lock();
+        try {
+            checkFingerprint();
+            Entry previous = entries.put(context + KEY_SEPARATOR + key, entry);
+            if (previous != null) unindex(previous);
+            for (int i = 0; i < entry.grams.length; i++) {
+                postings.computeIfAbsent(entry.grams[i], g -> new ArrayList<>()).add(new Posting(entry, entry.weights[i]));
+            }
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String hit(Entry entry, Counter counter) {
+        counter.increment();
+        savedTimer.record(entry.llmNanos, TimeUnit.NANOSECONDS);
+        return entry.response;
+    }
+
+    // Chamado com o lock
+    private void evict() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry eldest = it.next();
+            if (entries.size() <= maxEntries && now - eldest.createdAt < ttlMillis) break;
+            it.remove();
+            unindex(eldest);
+        }
+    }
+
+    private void unindex(Entry entry) {
+        for (int gram : entry.grams) {
+            List<Posting> list = postings.get(gram);
+            if (list == null) continue;
+            list.removeIf(p -> p.entry() == entry);
+            if (list.isEmpty()) postings.remove(gram);
+        }
+    }
+
+    // Prompt, modelo ou menu diferentes invalidam tudo
+    private void checkFingerprint() {
+        int current = currentFingerprint();
+        if (current == fingerprint) return;
+        if (!entries.isEmpty()) log.info("[CACHE IA] Prompt ou menu mudou. Descartando {} respostas.", entries.size());
+        entries.clear();
+        postings.clear();
+        fingerprint = current;
+    }
+
+    private int currentFingerprint() {
+        return Objects.hash(openAIService.receptionistFingerprint(), properties.getMenu());
+    }
+
+    static String key(String message) {
+        List<String> tokens = TextNormalizer.tokens(message);
+        StringBuilder sb = new StringBuilder();
+        for (String token : tokens) {
+            if (STOPWORDS.contains(token)) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(token);
+        }
+        return sb.toString();
+    }
+
+    // Perguntas anteriores, normalizadas como a chave; saudações e afins somem
+    static String context(List<String> previousQuestions) {
+        StringBuilder sb = new StringBuilder();
+        for (String question : previousQuestions) {
+            String key = key(question);
+            if (key.isEmpty()) continue;
+            if (sb.length() > 0) sb.append(" | ");
+            sb.append(key);
+        }
+        return sb.toString();
+    }
+
+    private static String[] words(String key) {
+        String[] words = key.split(" ");
+        Arrays.sort(words);
+        return words;
+    }
+
+    /**
+     * Mesmas palavras dos dois lados, uma a uma: iguais ou a um erro de digitação de distância
+     * (dois, em palavras longas). Negações só casam com elas mesmas.
+     */
+    static boolean sameWords(String[] query, String[] candidate) {
+        if (query.length != candidate.length) return false;
+        boolean[] used = new boolean[candidate.length];
+        for (String q : query) {
+            int match = -1;
+            for (int i = 0; i < candidate.length && match < 0; i++) {
+                if (!used[i] && q.equals(candidate[i])) match = i;
+            }
+            if (match < 0 && !NEGATIONS.contains(q)) {
+                for (int i = 0; i < candidate.length && match < 0; i++) {
+                    if (!used[i] && !NEGATIONS.contains(candidate[i]) && isTypo(q, candidate[i])) match = i;
+                }
+            }
+            if (match < 0) return false;
+            used[match] = true;
+        }
+        return true;
+    }
+
+    private static boolean isTypo(String a, String b) {
+        int shorter = Math.min(a.length(), b.length());
+        int allowed = shorter >= 7 ? 2 : shorter >= 4 ? 1 : 0;
+        return allowed > 0 && Math.abs(a.length() - b.length()) <= allowed && distance(a, b) <= allowed;
+    }
+
+    // Levenshtein com duas linhas
+    private static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private record Vector(int[] grams, float[] weights) {}
+
+    // Trigramas de " chave " com peso = frequência, normalizado (norma L2 = 1)
+    private static Vector vector(String key) {
+        String padded = " " + key + " ";
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            int gram = (padded.charAt(i) * 31 + padded.charAt(i + 1)) * 31 + padded.charAt(i + 2);
+            counts.merge(gram, 1, Integer::sum);
+        }
+        int[] grams = new int[counts.size()];
+        float[] weights = new float[counts.size()];
+        double norm = 0;
+        int i = 0;
+        for (Map.Entry<Integer, Integer> e : counts.entrySet()) {
+            grams[i] = e.getKey();
+            weights[i] = e.getValue();
+            norm += (double) e.getValue() * e.getValue();
+            i++;
+        }
+        float inv = (float) (1 / Math.sqrt(norm));
+        for (int j = 0; j < weights.length; j++) weights[j] *= inv;
+        return new Vector(grams, weights);
+    }
+
+    private static Counter lookups(MeterRegistry registry, String result) {
+        return Counter.builder("barberbot.llm.cache")
+                .description("Consultas ao cache de respostas do LLM")
+                .tag("result", result)
+                .register(registry);
+    }
+}
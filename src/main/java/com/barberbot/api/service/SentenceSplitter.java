@@ -0,0 +1,69 @@
+package com.barberbot.api.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Junta os tokens do streaming do LLM e corta em mensagens de WhatsApp.
+ * Corta sempre em quebra de parágrafo; em fim de frase (. ! ? seguido de espaço) só depois de
+ * {@code minChars}, para não mandar uma mensagem por frase curta. Números de lista ("1. ") não cortam.
+ */
+public final class SentenceSplitter {
+
+    private final int minChars;
+    private final StringBuilder buffer = new StringBuilder();
+    private int scanFrom;
+
+    public SentenceSplitter(int minChars) {
+        this.minChars = minChars;
+    }
+
+    /**
+     * Acrescenta um pedaço do texto e devolve os trechos que ficaram completos (pode ser vazio).
+     */
+    public List<String> append(String token) {
+        List<String> chunks = new ArrayList<>(1);
+        if (token == null || token.isEmpty()) return chunks;
+        buffer.append(token);
+        int cut;
+        while ((cut = nextBoundary()) > 0) {
+            String chunk = buffer.substring(0, cut).strip();
+            buffer.delete(0, cut);
+            scanFrom = 0;
+            if (!chunk.isEmpty()) chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * O que sobrou no fim da resposta, ou null.
+     */
+    public String flush() {
+        String rest = buffer.toString().strip();
+        buffer.setLength(0);
+        scanFrom = 0;
+        return rest.isEmpty() ? null : rest;
+    }
+
+    // Posição logo após o corte, ou -1. Precisa do caractere seguinte para decidir, então nunca corta no último.
+    private int nextBoundary() {
+        for (int i = scanFrom; i + 1 < buffer.length(); i++) {
+            char c = buffer.charAt(i);
+            char next = buffer.charAt(i + 1);
+            if (c == '\n' && next == '\n') return i + 2;
+            if ((c == '.' || c == '!' || c == '?') && Character.isWhitespace(next) && i + 1 >= minChars
+                    && !(c == '.' && isListMarker(i))) {
+                return i + 1;
+            }
+        }
+        scanFrom = Math.max(0, buffer.length() - 1);
+        return -1;
+    }
+
+    // "1." no começo da linha
+    private boolean isListMarker(int dot) {
+        int i = dot - 1;
+        while (i >= 0 && Character.isDigit(buffer.charAt(i))) i--;
+        return i < dot - 1 && (i < 0 || buffer.charAt(i) == '\n');
+    }
+}
@@ -0,0 +1,48 @@
+package com.barberbot.api.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Normalização de texto em português para comparações: minúsculas, sem acento,
+ * só letras/dígitos separados por um espaço ("Preço?!  Você" → "preco voce").
+ */
+public final class TextNormalizer {
+
+    private TextNormalizer() {}
+
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) return "";
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        boolean space = true;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+                space = false;
+            } else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        int length = sb.length();
+        if (length > 0 && sb.charAt(length - 1) == ' ') sb.setLength(length - 1);
+        return sb.toString();
+    }
+
+    public static List<String> tokens(String text) {
+        String normalized = normalize(text);
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        while (start < normalized.length()) {
+            int end = normalized.indexOf(' ', start);
+            if (end < 0) end = normalized.length();
+            tokens.add(normalized.substring(start, end));
+            start = end + 1;
+        }
+        return tokens;
+    }
+}
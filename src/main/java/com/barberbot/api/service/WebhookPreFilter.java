@@ -0,0 +1,124 @@
+package com.barberbot.api.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Filtro barato que olha só os primeiros bytes do corpo do webhook, antes de qualquer parse JSON.
+ * Descarta eventos que o bot não trata (presence.update, connection.update...) e mensagens
+ * que o orquestrador ignoraria de qualquer forma (fromMe e grupos @g.us).
+ * Na dúvida (campo fora da janela lida), deixa passar para o fluxo normal.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WebhookPreFilter {
+
+    private static final byte[] EVENT_FIELD = "\"event\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_FIELD = "\"key\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FROM_ME_FIELD = "\"fromMe\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REMOTE_JID_FIELD = "\"remoteJid\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GROUP_SUFFIX = "@g.us".getBytes(StandardCharsets.US_ASCII);
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> droppedCounters = new ConcurrentHashMap<>();
+
+    /**
+     * Retorna o motivo do descarte ou null se o webhook deve seguir para o parse completo.
+     */
+    public String check(byte[] head, int length) {
+        int eventStart = valueStart(head, 0, length, EVENT_FIELD);
+        if (eventStart < 0 || head[eventStart] != '"') return null;
+        int eventEnd = indexOf(head, eventStart + 1, length, (byte) '"');
+        if (eventEnd < 0) return null;
+        String event = new String(head, eventStart + 1, eventEnd - eventStart - 1, StandardCharsets.US_ASCII);
+
+        if (isQrCodeEvent(event)) return null;
+        if (!isMessageEvent(event)) return drop(event, "event");
+
+        // messages.upsert: só decide pelo objeto data.key (sem objetos aninhados)
+        int keyStart = valueStart(head, 0, length, KEY_FIELD);
+        if (keyStart < 0 || head[keyStart] != '{') return null;
+        int keyEnd = indexOf(head, keyStart, length, (byte) '}');
+        if (keyEnd < 0) return null;
+
+        int fromMe = valueStart(head, keyStart, keyEnd, FROM_ME_FIELD);
+        if (fromMe >= 0 && startsWith(head, fromMe, keyEnd, TRUE)) return drop(event, "fromMe");
+
+        int jidStart = valueStart(head, keyStart, keyEnd, REMOTE_JID_FIELD);
+        if (jidStart >= 0 && head[jidStart] == '"') {
+            int jidEnd = indexOf(head, jidStart + 1, keyEnd, (byte) '"');
+            if (jidEnd > 0 && endsWith(head, jidEnd, GROUP_SUFFIX)) return drop(event, "group");
+        }
+        return null;
+    }
+
+    public static boolean isMessageEvent(String event) {
+        return "messages.upsert".equalsIgnoreCase(event) || "MESSAGES_UPSERT".equalsIgnoreCase(event);
+    }
+
+    public static boolean isQrCodeEvent(String event) {
+        return "qrcode.updated".equalsIgnoreCase(event) || "QRCODE_UPDATED".equalsIgnoreCase(event);
+    }
+
+    private String drop(String event, String reason) {
+        droppedCounters.computeIfAbsent(event + "|" + reason, k -> Counter.builder("barberbot.webhook.dropped")
+                .description("Webhooks descartados no pré-filtro, sem parse")
+                .tag("event", event)
+                .tag("reason", reason)
+                .register(meterRegistry)).increment();
+        log.debug("Webhook descartado no pre-filtro - {} ({})", event, reason);
+        return reason;
+    }
+
+    // Posição do primeiro byte do valor de "campo": valor (pulando espaços e ':'), ou -1
+    private static int valueStart(byte[] buf, int from, int to, byte[] field) {
+        int i = indexOf(buf, from, to, field);
+        if (i < 0) return -1;
+        i += field.length;
+        while (i < to && (buf[i] == ' ' || buf[i] == '\t' || buf[i] == '\r' || buf[i] == '\n')) i++;
+        if (i >= to || buf[i] != ':') return -1;
+        i++;
+        while (i < to && (buf[i] == ' ' || buf[i] == '\t' || buf[i] == '\r' || buf[i] == '\n')) i++;
+        return i < to ? i : -1;
+    }
+
+    private static int indexOf(byte[] buf, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] buf, int from, int to, byte[] needle) {
+        outer:
+        for (int i = from; i <= to - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (buf[i + j] != needle[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] buf, int at, int to, byte[] prefix) {
+        if (at + prefix.length > to) return false;
+        for (int j = 0; j < prefix.length; j++) {
+            if (buf[at + j] != prefix[j]) return false;
+        }
+        return true;
+    }
+
+    private static boolean endsWith(byte[] buf, int end, byte[] suffix) {
+        int start = end - suffix.length;
+        return start >= 0 && startsWith(buf, start, end, suffix);
+    }
+}
@@ -0,0 +1,91 @@
+package com.barberbot.api.service;
+
+import com.barberbot.api.dto.EvolutionWebhookDTO;
+import com.barberbot.api.dto.MediaHandle;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Lê o corpo do webhook da Evolution em streaming (Jackson JsonParser).
+ * O campo data.message.base64 é decodificado direto para disco pelo {@link MediaSpool};
+ * o resto do payload (pequeno) fica num TokenBuffer para virar DTO ou árvore depois.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WebhookReader {
+
+    private final ObjectMapper objectMapper;
+    private final MediaSpool mediaSpool;
+
+    @Getter
+    public static class Payload {
+        private String event;
+        private String instance;
+        private MediaHandle media;
+        private TokenBuffer body;
+    }
+
+    public Payload read(InputStream in) throws IOException {
+        Payload payload = new Payload();
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            TokenBuffer buffer = new TokenBuffer(parser);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME && isMessageBase64(parser.getParsingContext())) {
+                    if (parser.nextToken() == JsonToken.VALUE_STRING && payload.media == null) {
+                        payload.media = mediaSpool.spool(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    continue;
+                }
+                if (token == JsonToken.VALUE_STRING && isRootField(parser.getParsingContext())) {
+                    String name = parser.getCurrentName();
+                    if ("event".equals(name)) payload.event = parser.getText();
+                    else if ("instance".equals(name)) payload.instance = parser.getText();
+                }
+                buffer.copyCurrentEvent(parser);
+            }
+            payload.body = buffer;
+        } catch (IOException | RuntimeException e) {
+            if (payload.media != null) payload.media.release();
+            throw e;
+        }
+        return payload;
+    }
+
+    public EvolutionWebhookDTO toWebhook(Payload payload) throws IOException {
+        EvolutionWebhookDTO webhook = objectMapper.readValue(payload.body.asParser(objectMapper), EvolutionWebhookDTO.class);
+        webhook.setMedia(payload.media);
+        return webhook;
+    }
+
+    public JsonNode toTree(Payload payload) throws IOException {
+        return objectMapper.readTree(payload.body.asParser(objectMapper));
+    }
+
+    // data.message.base64
+    private static boolean isMessageBase64(JsonStreamContext ctx) {
+        if (!"base64".equals(ctx.getCurrentName())) return false;
+        JsonStreamContext message = ctx.getParent();
+        if (message == null || !"message".equals(message.getCurrentName())) return false;
+        JsonStreamContext data = message.getParent();
+        return data != null && "data".equals(data.getCurrentName()) && data.getParent() != null && data.getParent().inRoot();
+    }
+
+    private static boolean isRootField(JsonStreamContext ctx) {
+        return ctx.inObject() && ctx.getParent() != null && ctx.getParent().inRoot();
+    }
+}
@@ -1,70 +1,214 @@
 package com.barberbot.api.service;
 
 import com.barberbot.api.client.EvolutionClient;
+import com.barberbot.api.client.SendPriority;
+import com.barberbot.api.config.BarberBotProperties;
 import com.barberbot.api.dto.MessageDTO;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+/**
+ * Envio de mensagens pela Evolution, sem bloquear thread nenhuma.
+ * <p>
+ * Cada destinatário tem uma fila própria: as mensagens para o mesmo número saem na ordem em que foram
+ * pedidas, uma depois da outra. As filas alimentam um fluxo reativo por {@link SendPriority} com {@code flatMap}
+ * limitado ({@code maxConcurrency} para respostas, menos para lembretes e disparos), então um disparo esperando
+ * o limitador de envios nunca ocupa a vez de uma resposta. Os métodos devolvem um {@link Mono} com a resposta da Evolution;
+ * quem não precisa do resultado pode simplesmente ignorá-lo (o envio acontece do mesmo jeito).
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class WhatsAppService {
-    
+
     private final EvolutionClient evolutionClient;
-    
-    public void sendTextMessage(String phone, String message) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                evolutionClient.sendTextMessage(phone, message).block();
-            } catch (Exception e) {
-                log.error("Erro ao enviar mensagem para {}: {}", phone, e.getMessage(), e);
-            }
-        });
+    private final DeadLetterStore deadLetters;
+    private final Duration sendTimeout;
+    private final Duration deliveryTimeout;
+
+    // Envio pendente. Fica na cabeça da fila do destinatário enquanto está em andamento.
+    // deadLetter: texto guardado em scheduled_tasks se o envio falhar de vez (null = quem chamou cuida)
+    private record Outbound(String lane, SendPriority priority, Duration delay, Supplier<Mono<String>> call,
+                            String phone, String deadLetter, Sinks.One<String> result, long enqueuedAt) {}
+
+    private final Map<String, ArrayDeque<Outbound>> lanes = new ConcurrentHashMap<>();
+    private final Map<SendPriority, Sinks.Many<Outbound>> ready = new EnumMap<>(SendPriority.class);
+    private final List<Disposable> pipelines = new ArrayList<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Timer sendTimer;
+    private final Counter failedCounter;
+
+    public WhatsAppService(EvolutionClient evolutionClient, DeadLetterStore deadLetters,
+                           BarberBotProperties properties, MeterRegistry meterRegistry) {
+        this.evolutionClient = evolutionClient;
+        this.deadLetters = deadLetters;
+        BarberBotProperties.Outbound config = properties.getOutbound();
+        this.sendTimeout = Duration.ofSeconds(config.getSendTimeoutSeconds());
+        this.deliveryTimeout = Duration.ofSeconds(config.getDeliveryTimeoutSeconds());
+
+        Gauge.builder("barberbot.outbound.pending", pending, AtomicInteger::get)
+                .description("Mensagens aguardando ou em envio para a Evolution")
+                .register(meterRegistry);
+        this.sendTimer = Timer.builder("barberbot.outbound.send")
+                .description("Tempo entre pedir o envio e a Evolution responder")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("barberbot.outbound.failed")
+                .description("Envios que falharam ou estouraram o tempo")
+                .register(meterRegistry);
+
+        for (SendPriority priority : SendPriority.values()) {
+            Sinks.Many<Outbound> sink = Sinks.many().unicast().onBackpressureBuffer();
+            int concurrency = priority == SendPriority.INTERACTIVE
+                    ? config.getMaxConcurrency()
+                    : Math.max(1, config.getMaxConcurrency() / 4);
+            ready.put(priority, sink);
+            pipelines.add(sink.asFlux().flatMap(this::deliver, concurrency).subscribe());
+        }
     }
-    
-    public void sendMessage(MessageDTO messageDTO) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                evolutionClient.sendMessage(messageDTO).block();
-            } catch (Exception e) {
-                log.error("Erro ao enviar mensagem: {}", e.getMessage(), e);
-            }
-        });
+
+    public Mono<String> sendTextMessage(String phone, String message) {
+        return sendTextMessage(phone, message, SendPriority.INTERACTIVE);
     }
-    
-    public void sendImage(String phone, String imageUrl, String caption) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                evolutionClient.sendImageMessage(phone, imageUrl, caption).block();
-            } catch (Exception e) {
-                log.error("Erro ao enviar imagem para {}: {}", phone, e.getMessage(), e);
-            }
-        });
+
+    /**
+     * Texto com prioridade explícita (lembretes e disparos saem atrás das respostas a clientes).
+     */
+    public Mono<String> sendTextMessage(String phone, String message, SendPriority priority) {
+        return enqueue(phone, priority, Duration.ZERO, message, () -> evolutionClient.sendTextMessage(phone, message, priority));
+    }
+
+    /**
+     * Envio de uma tarefa de scheduled_tasks. A própria linha registra o resultado (COMPLETED só com o
+     * aceite da Evolution, FAILED se esgotar as tentativas), então aqui não se cria dead-letter.
+     */
+    public Mono<String> sendScheduled(String phone, String message) {
+        return enqueue(phone, SendPriority.REMINDER, Duration.ZERO, null,
+                () -> evolutionClient.sendTextMessage(phone, message, SendPriority.REMINDER));
+    }
+
+    /**
+     * Envia depois de {@code delay}, contado a partir do fim do envio anterior para o mesmo número
+     * (ex: o menu um segundo depois da saudação). A espera é um timer, não uma thread parada.
+     */
+    public Mono<String> sendTextMessageAfter(String phone, String message, Duration delay) {
+        return enqueue(phone, SendPriority.INTERACTIVE, delay, message, () -> evolutionClient.sendTextMessage(phone, message));
     }
 
-    public void sendMenuList(String phone) {
-        sendTextMessage(phone, MenuOptions.getMenuAsText());
+    public Mono<String> sendMessage(MessageDTO messageDTO) {
+        return enqueue(messageDTO.getNumber(), SendPriority.INTERACTIVE, Duration.ZERO, messageDTO.getText(),
+                () -> evolutionClient.sendMessage(messageDTO));
+    }
+
+    public Mono<String> sendImage(String phone, String imageUrl, String caption) {
+        return sendImage(phone, imageUrl, caption, SendPriority.INTERACTIVE);
+    }
+
+    public Mono<String> sendImage(String phone, String imageUrl, String caption, SendPriority priority) {
+        return enqueue(phone, priority, Duration.ZERO, caption == null ? imageUrl : caption + "\n" + imageUrl,
+                () -> evolutionClient.sendImageMessage(phone, imageUrl, caption, priority));
+    }
+
+    public Mono<String> sendMenuList(String phone) {
+        return sendTextMessage(phone, MenuOptions.getMenuAsText());
     }
 
     /**
-     * Envia lista interativa (Botões)
+     * Envia lista interativa (Botões). Em caso de falha o Mono termina com erro, para quem chamou fazer fallback.
      */
-    public void sendListMessage(String phone, String title, String description, 
-                                String buttonText, String footerText, 
-                                List<Map<String, Object>> sections) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                evolutionClient.sendListMessage(phone, title, description, buttonText, footerText, sections).block();
-            } catch (Exception e) {
-                log.error("Erro ao enviar lista interativa para {}: {}", phone, e.getMessage());
-                // Lança exceção para o Orchestrator pegar e fazer fallback
-                throw new RuntimeException(e);
+    public Mono<String> sendListMessage(String phone, String title, String description,
+                                        String buttonText, String footerText,
+                                        List<Map<String, Object>> sections) {
+        return enqueue(phone, SendPriority.INTERACTIVE, Duration.ZERO, null,
+                () -> evolutionClient.sendListMessage(phone, title, description, buttonText, footerText, sections));
+    }
+
+    private Mono<String> enqueue(String phone, SendPriority priority, Duration delay, String deadLetter, Supplier<Mono<String>> call) {
+        Outbound outbound = new Outbound(laneKey(phone, priority), priority, delay, call, phone, deadLetter,
+                Sinks.one(), System.nanoTime());
+        pending.incrementAndGet();
+        boolean[] idle = new boolean[1];
+        lanes.compute(outbound.lane(), (k, queue) -> {
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                idle[0] = true;
             }
+            queue.add(outbound);
+            return queue;
         });
+        if (idle[0]) emit(outbound);
+        return outbound.result().asMono();
+    }
+
+    private Mono<Void> deliver(Outbound outbound) {
+        Mono<Void> wait = outbound.delay().isZero() ? Mono.empty() : Mono.delay(outbound.delay()).then();
+        return wait.then(Mono.defer(outbound.call()))
+                .timeout(deliveryTimeout)
+                .doOnNext(response -> outbound.result().tryEmitValue(response))
+                .onErrorResume(e -> {
+                    failedCounter.increment();
+                    log.error("Erro ao enviar mensagem para {}: {}", outbound.lane(), e.getMessage());
+                    if (outbound.deadLetter() != null) deadLetters.record(outbound.phone(), outbound.deadLetter(), e);
+                    outbound.result().tryEmitError(e);
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    outbound.result().tryEmitEmpty(); // sem efeito se já houve valor ou erro
+                    sendTimer.record(System.nanoTime() - outbound.enqueuedAt(), TimeUnit.NANOSECONDS);
+                    pending.decrementAndGet();
+                    advance(outbound.lane());
+                })
+                .then();
+    }
+
+    // Tira o envio concluído da fila do destinatário e libera o próximo
+    private void advance(String lane) {
+        Outbound[] next = new Outbound[1];
+        lanes.computeIfPresent(lane, (k, queue) -> {
+            queue.poll();
+            next[0] = queue.peek();
+            return next[0] != null ? queue : null;
+        });
+        if (next[0] != null) emit(next[0]);
+    }
+
+    // O sink unicast não aceita emissões concorrentes
+    private void emit(Outbound outbound) {
+        Sinks.Many<Outbound> sink = ready.get(outbound.priority());
+        synchronized (sink) {
+            sink.emitNext(outbound, Sinks.EmitFailureHandler.FAIL_FAST);
+        }
+    }
+
+    // Uma fila por número e prioridade: um lembrete esperando vez não segura a resposta ao mesmo cliente
+    private static String laneKey(String phone, SendPriority priority) {
+        return priority.name() + ":" + PhoneNumbers.digits(phone);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Dá um tempo para as filas esvaziarem antes de derrubar o fluxo
+        long deadline = System.currentTimeMillis() + sendTimeout.toMillis();
+        while (pending.get() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(100);
+        if (pending.get() > 0) log.warn("Encerrando com {} mensagens não enviadas", pending.get());
+        pipelines.forEach(Disposable::dispose);
     }
-}       
\ No newline at end of file
+}
@@ -0,0 +1,11 @@
+-- Deduplicação de mensagens pelo próprio banco (sem SELECT existsByMessageId por mensagem)
+
+-- 1. Remove duplicatas antigas (corrida entre webhooks repetidos) para o índice único poder existir
+DELETE FROM interactions a
+USING interactions b
+WHERE a.message_id IS NOT NULL
+  AND a.message_id = b.message_id
+  AND a.ctid > b.ctid;
+
+-- 2. Índice único parcial: só mensagens recebidas têm message_id (respostas do bot ficam NULL)
+CREATE UNIQUE INDEX uq_interaction_message_id ON interactions(message_id) WHERE message_id IS NOT NULL;
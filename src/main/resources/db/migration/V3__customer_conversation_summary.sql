@@ -0,0 +1,4 @@
+-- Resumo acumulado das falas antigas que não cabem mais no contexto do LLM
+ALTER TABLE customers ADD COLUMN conversation_summary TEXT;
+-- Horário da última fala já coberta pelo resumo
+ALTER TABLE customers ADD COLUMN summary_through TIMESTAMP;
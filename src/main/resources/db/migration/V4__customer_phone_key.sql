@@ -0,0 +1,22 @@
+-- Chave canônica do telefone (E.164 como número, sem o nono dígito de celular brasileiro).
+-- Mesma regra de PhoneNumbers.canonical: busca, detecção do admin e duplicatas "com/sem 9" numa consulta ao índice.
+ALTER TABLE customers ADD COLUMN phone_key BIGINT;
+
+WITH digits AS (
+    SELECT id, regexp_replace(split_part(split_part(phone_number, '@', 1), ':', 1), '[^0-9]', '', 'g') AS d
+    FROM customers
+), e164 AS (
+    SELECT id, CASE WHEN length(d) IN (10, 11) THEN '55' || d ELSE d END AS d
+    FROM digits
+)
+UPDATE customers c
+SET phone_key = CASE
+        WHEN length(e.d) = 13 AND substr(e.d, 1, 2) = '55' AND substr(e.d, 5, 1) = '9' AND substr(e.d, 6, 1) BETWEEN '6' AND '9'
+            THEN (substr(e.d, 1, 4) || substr(e.d, 6))::BIGINT
+        ELSE e.d::BIGINT
+    END
+FROM e164 e
+WHERE c.id = e.id AND length(e.d) BETWEEN 10 AND 15;
+
+-- Não é UNIQUE: a base pode já ter o mesmo cliente com e sem o 9 (a aplicação usa o mais antigo)
+CREATE INDEX idx_customers_phone_key ON customers(phone_key);
@@ -0,0 +1,16 @@
+-- Disparos em massa retomáveis: o cursor é o último cliente (por id) já processado
+CREATE TABLE campaigns (
+    id UUID PRIMARY KEY,
+    admin_phone VARCHAR(20) NOT NULL,
+    message TEXT NOT NULL,
+    prospecting BOOLEAN NOT NULL DEFAULT FALSE,
+    status VARCHAR(20) NOT NULL, -- RUNNING, PAUSED, CANCELLED, COMPLETED
+    cursor_id UUID,
+    total INT NOT NULL DEFAULT 0,
+    sent INT NOT NULL DEFAULT 0,
+    failed INT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP,
+    updated_at TIMESTAMP,
+    finished_at TIMESTAMP
+);
+CREATE INDEX idx_campaign_status ON campaigns(status);
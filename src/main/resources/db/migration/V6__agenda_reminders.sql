@@ -0,0 +1,12 @@
+-- Lembretes da agenda gravados em scheduled_tasks (sobrevivem a reinício/deploy).
+-- dedup_key = telefone canônico + horário do corte: reenviar a mesma foto atualiza a linha em vez de duplicar.
+ALTER TABLE scheduled_tasks ADD COLUMN dedup_key VARCHAR(100);
+ALTER TABLE scheduled_tasks ADD COLUMN appointment_time TIMESTAMP;
+ALTER TABLE scheduled_tasks ADD COLUMN customer_name VARCHAR(255);
+ALTER TABLE scheduled_tasks ADD COLUMN service_name VARCHAR(255);
+
+-- NULLs não conflitam: tarefas antigas e dead-letters continuam sem chave
+CREATE UNIQUE INDEX uq_task_dedup_key ON scheduled_tasks(dedup_key);
+
+-- Agenda do dia (opção 6, resumo da manhã e da noite)
+CREATE INDEX idx_task_type_appointment ON scheduled_tasks(task_type, appointment_time);
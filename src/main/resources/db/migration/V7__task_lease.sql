@@ -0,0 +1,7 @@
+-- Disparador por "claim": cada instância reserva um lote (FOR UPDATE SKIP LOCKED) e ganha um lease.
+-- Lease vencido (instância caiu no meio do envio) devolve a tarefa para PENDING.
+ALTER TABLE scheduled_tasks ADD COLUMN lease_until TIMESTAMP;
+
+UPDATE scheduled_tasks SET lease_until = updated_at + INTERVAL '10 minutes' WHERE status = 'IN_PROGRESS';
+
+CREATE INDEX idx_task_lease ON scheduled_tasks(lease_until) WHERE status = 'IN_PROGRESS';
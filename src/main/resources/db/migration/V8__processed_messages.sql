@@ -0,0 +1,14 @@
+-- Message ids já atendidos (cliente e admin), gravados antes de qualquer efeito da mensagem.
+-- No restart o journal reentrega o que não foi confirmado: o que estiver aqui não roda de novo
+-- (disparo em massa, importação de CSV, leitura de agenda...).
+CREATE TABLE processed_messages (
+    message_id VARCHAR(255) PRIMARY KEY,
+    processed_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_processed_messages_at ON processed_messages(processed_at);
+
+-- Mensagens de cliente já gravadas no histórico
+INSERT INTO processed_messages (message_id, processed_at)
+SELECT message_id, MIN(timestamp) FROM interactions WHERE message_id IS NOT NULL GROUP BY message_id
+ON CONFLICT DO NOTHING;
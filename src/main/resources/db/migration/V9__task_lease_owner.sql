@@ -0,0 +1,3 @@
+-- Dono do lease: a instância renova só o que é dela, e um aceite atrasado (lease já vencido e a tarefa
+-- reservada de novo por outra instância) não conclui a reserva alheia.
+ALTER TABLE scheduled_tasks ADD COLUMN lease_owner UUID;
@@ -0,0 +1,169 @@
+package com.barberbot.api.scheduler;
+
+import org.flywaydb.core.Flyway;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Medição da reserva de tarefas agendadas ({@link BarberBotScheduler#CLAIM_SQL}) com várias instâncias disputando
+ * a mesma fila de {@value #DEFAULT_TASKS} tarefas vencidas.
+ * <p>
+ * Cada worker faz o papel de uma instância (conexão e lease_owner próprios): reserva um lote com a mesma query do
+ * motor, conclui com o mesmo UPDATE do {@code finishAll} e repete até a fila esvaziar. Sem envio à Evolution, então
+ * o número é o teto do banco, não do WhatsApp. No fim mostra tarefas/s e quantas foram reservadas mais de uma vez
+ * (tem que ser zero).
+ * <p>
+ * Precisa de um Postgres de teste vazio (aplica as migrations e apaga o que semeou; recusa rodar se já houver
+ * tarefas na tabela). Não roda no {@code mvn test}. Para rodar:
+ * <pre>
+ * createdb barberbot_bench
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * BENCH_DB_URL=jdbc:postgresql://localhost:5432/barberbot_bench BENCH_DB_USER=... BENCH_DB_PASSWORD=... \
+ *   java -cp target/classes:target/test-classes:$(cat target/cp.txt) com.barberbot.api.scheduler.ClaimBenchmark
+ * </pre>
+ * Opcionais: {@code BENCH_TASKS} ({@value #DEFAULT_TASKS}), {@code BENCH_WORKERS} ({@value #DEFAULT_WORKERS}),
+ * {@code BENCH_BATCH} ({@value #DEFAULT_BATCH}, o claimBatchSize padrão).
+ */
+public final class ClaimBenchmark {
+
+    private static final int DEFAULT_TASKS = 10_000;
+    private static final int DEFAULT_WORKERS = 4;
+    private static final int DEFAULT_BATCH = 50;
+    private static final String TASK_TYPE = "BENCH";
+
+    private static final String SEED_SQL = """
+            INSERT INTO scheduled_tasks (id, customer_phone, execution_time, task_type, message_content, status,
+                                         created_at, updated_at)
+            SELECT gen_random_uuid(), '5511' || lpad(g::text, 9, '0'), now() - interval '1 minute', ?, 'bench',
+                   'PENDING', now(), now()
+            FROM generate_series(1, ?) g
+            """;
+
+    private static final String FINISH_SQL = """
+            UPDATE scheduled_tasks SET status = 'COMPLETED', lease_until = NULL, lease_owner = NULL, updated_at = now()
+            WHERE id = ANY(?) AND status = 'IN_PROGRESS' AND lease_owner = ?
+            """;
+
+    private ClaimBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = required("BENCH_DB_URL");
+        String user = required("BENCH_DB_USER");
+        String password = System.getenv().getOrDefault("BENCH_DB_PASSWORD", "");
+        int tasks = intEnv("BENCH_TASKS", DEFAULT_TASKS);
+        int workers = intEnv("BENCH_WORKERS", DEFAULT_WORKERS);
+        int batch = intEnv("BENCH_BATCH", DEFAULT_BATCH);
+
+        Flyway.configure().dataSource(url, user, password).locations("classpath:db/migration").load().migrate();
+
+        try (Connection conn = DriverManager.getConnection(url, user, password)) {
+            long existing = count(conn, "SELECT count(*) FROM scheduled_tasks");
+            if (existing > 0) {
+                throw new IllegalStateException("scheduled_tasks já tem " + existing
+                        + " linhas; use um banco vazio (a reserva pegaria tarefas de verdade)");
+            }
+            try (PreparedStatement ps = conn.prepareStatement(SEED_SQL)) {
+                ps.setString(1, TASK_TYPE);
+                ps.setInt(2, tasks);
+                ps.executeUpdate();
+            }
+            try (Statement st = conn.createStatement()) {
+                st.execute("ANALYZE scheduled_tasks");
+            }
+        }
+
+        Map<UUID, AtomicInteger> claims = new ConcurrentHashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<Integer>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < workers; i++) {
+            results.add(pool.submit(() -> drain(url, user, password, batch, claims)));
+        }
+        List<Integer> perWorker = new ArrayList<>();
+        for (Future<Integer> result : results) perWorker.add(result.get());
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        long duplicates = claims.values().stream().filter(c -> c.get() > 1).count();
+        long notCompleted;
+        try (Connection conn = DriverManager.getConnection(url, user, password)) {
+            notCompleted = count(conn, "SELECT count(*) FROM scheduled_tasks WHERE status <> 'COMPLETED'");
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM scheduled_tasks WHERE task_type = ?")) {
+                ps.setString(1, TASK_TYPE);
+                ps.executeUpdate();
+            }
+        }
+
+        System.out.printf("tarefas=%d workers=%d lote=%d%n", tasks, workers, batch);
+        System.out.printf("tempo=%.2fs  vazão=%.0f tarefas/s%n", seconds, tasks / seconds);
+        System.out.printf("por worker=%s%n", perWorker);
+        System.out.printf("reservadas mais de uma vez=%d  não concluídas=%d%n", duplicates, notCompleted);
+    }
+
+    // Uma "instância": reserva e conclui lotes até a fila esvaziar
+    private static int drain(String url, String user, String password, int batch,
+                             Map<UUID, AtomicInteger> claims) throws SQLException {
+        UUID owner = UUID.randomUUID();
+        int done = 0;
+        try (Connection conn = DriverManager.getConnection(url, user, password);
+             PreparedStatement claim = conn.prepareStatement(BarberBotScheduler.CLAIM_SQL);
+             PreparedStatement finish = conn.prepareStatement(FINISH_SQL)) {
+            while (true) {
+                LocalDateTime now = LocalDateTime.now();
+                claim.setTimestamp(1, Timestamp.valueOf(now.plusMinutes(10)));
+                claim.setObject(2, owner);
+                claim.setTimestamp(3, Timestamp.valueOf(now));
+                claim.setTimestamp(4, Timestamp.valueOf(now));
+                claim.setInt(5, batch);
+                List<UUID> ids = new ArrayList<>();
+                try (ResultSet rs = claim.executeQuery()) {
+                    while (rs.next()) ids.add(rs.getObject("id", UUID.class));
+                }
+                if (ids.isEmpty()) return done;
+                ids.forEach(id -> claims.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet());
+
+                Array array = conn.createArrayOf("uuid", ids.toArray());
+                finish.setArray(1, array);
+                finish.setObject(2, owner);
+                done += finish.executeUpdate();
+                array.free();
+            }
+        }
+    }
+
+    private static long count(Connection conn, String sql) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static String required(String name) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) throw new IllegalArgumentException("Defina " + name);
+        return value;
+    }
+
+    private static int intEnv(String name, int fallback) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? fallback : Integer.parseInt(value);
+    }
+}
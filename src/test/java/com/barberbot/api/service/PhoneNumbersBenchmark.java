@@ -0,0 +1,59 @@
+package com.barberbot.api.service;
+
+/**
+ * Medição simples (sem JMH) de {@link PhoneNumbers#canonical} contra o replaceAll("[^0-9]", "") que ele substituiu.
+ * <p>
+ * Não roda no {@code mvn test}. Para rodar:
+ * <pre>
+ * mvn -q test-compile
+ * java -cp target/classes:target/test-classes com.barberbot.api.service.PhoneNumbersBenchmark
+ * </pre>
+ * Aquece e mede em rodadas de {@value #OPS} chamadas sobre números em formatos reais (máscara, +55, JID).
+ */
+public final class PhoneNumbersBenchmark {
+
+    private static final int OPS = 2_000_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+
+    private static final String[] INPUTS = {
+            "5511987654321", "(11) 98765-4321", "+55 11 8765-4321", "5511987654321@s.whatsapp.net",
+            "5521912345678:12@s.whatsapp.net", "11 91234-5678", "021 3456-7890", "+1 415 555 0100"
+    };
+
+    private PhoneNumbersBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += canonical();
+            sink += regex();
+        }
+        double canonical = Double.MAX_VALUE;
+        double regex = Double.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += canonical();
+            canonical = Math.min(canonical, (System.nanoTime() - start) / (double) OPS);
+            start = System.nanoTime();
+            sink += regex();
+            regex = Math.min(regex, (System.nanoTime() - start) / (double) OPS);
+        }
+        System.out.printf("canonical(): %.1f ns/op%n", canonical);
+        System.out.printf("replaceAll:  %.1f ns/op%n", regex);
+        System.out.println("(melhor de " + ROUNDS + " rodadas, " + System.getProperty("java.version") + "; checksum " + sink + ")");
+    }
+
+    private static long canonical() {
+        long sum = 0;
+        for (int i = 0; i < OPS; i++) sum += PhoneNumbers.canonical(INPUTS[i & 7]);
+        return sum;
+    }
+
+    private static long regex() {
+        long sum = 0;
+        for (int i = 0; i < OPS; i++) sum += INPUTS[i & 7].replaceAll("[^0-9]", "").length();
+        return sum;
+    }
+}